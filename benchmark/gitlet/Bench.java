@@ -0,0 +1,124 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Small benchmark harness modeled on JMH: every benchmark runs WARMUP
+ *  timed iterations that are thrown away, then MEASURE iterations that
+ *  are reported as average time per operation and throughput.
+ *  Results go through sink() so the JIT can not drop the work.
+ *  Flags: --warmup=N --measure=N --time=MS --filter=SUBSTRING
+ *  Unknown flags are left for the suites.
+ */
+class Bench {
+
+    /** A benchmark body, called once per operation. */
+    interface Op {
+        Object run() throws Exception;
+    }
+
+    /** A setup step, called before each iteration and not timed. */
+    interface Setup {
+        void run() throws Exception;
+    }
+
+    /** Results end up here so they are never dead code. */
+    private static volatile Object sink;
+
+    private int warmup = 3;
+    private int measure = 5;
+    private long iterationMillis = 500;
+    private String filter = "";
+
+    /** Where results are printed. */
+    private PrintStream out = System.out;
+
+    /** Harness configured from command line ARGS. */
+    Bench(String... args) {
+        for (String arg : args) {
+            if (arg.startsWith("--warmup=")) {
+                warmup = Integer.parseInt(arg.substring(9));
+            } else if (arg.startsWith("--measure=")) {
+                measure = Integer.parseInt(arg.substring(10));
+            } else if (arg.startsWith("--time=")) {
+                iterationMillis = Long.parseLong(arg.substring(7));
+            } else if (arg.startsWith("--filter=")) {
+                filter = arg.substring(9);
+            }
+        }
+        out.printf("%-40s %14s %12s %14s%n", "Benchmark", "ns/op", "+/-", "ops/s");
+    }
+
+    /** Print results to OUT, for suites that silence System.out. */
+    void setReport(PrintStream out) {
+        this.out = out;
+    }
+
+    /** Keep VALUE alive. */
+    static void sink(Object value) {
+        sink = value;
+    }
+
+    /** Time OP, repeated for the iteration time. */
+    void run(String name, Op op) {
+        run(name, () -> { }, op);
+    }
+
+    /** Time OP, calling SETUP before each iteration. */
+    void run(String name, Setup setup, Op op) {
+        run(name, setup, 0, op);
+    }
+
+    /** Time OP, calling SETUP before each iteration. If BATCH is positive,
+     *  each iteration is exactly BATCH operations instead of running for
+     *  the iteration time, for operations that use up their setup. */
+    void run(String name, Setup setup, int batch, Op op) {
+        if (!name.contains(filter)) {
+            return;
+        }
+        try {
+            for (int i = 0; i < warmup; ++i) {
+                setup.run();
+                iteration(batch, op);
+            }
+            List<Double> nsPerOp = new ArrayList<>();
+            for (int i = 0; i < measure; ++i) {
+                setup.run();
+                nsPerOp.add(iteration(batch, op));
+            }
+            report(name, nsPerOp);
+        } catch (Exception excp) {
+            out.printf("%-40s failed: %s%n", name, excp);
+        }
+    }
+
+    /** Run OP BATCH times, or until the iteration time is used if BATCH
+     *  is not positive, return ns per op. */
+    private double iteration(int batch, Op op) throws Exception {
+        long deadline = System.nanoTime() + iterationMillis * 1_000_000;
+        long start = System.nanoTime();
+        long ops = 0;
+        long now;
+        do {
+            sink(op.run());
+            ops += 1;
+            now = System.nanoTime();
+        } while (batch > 0 ? ops < batch : now < deadline);
+        return (double) (now - start) / ops;
+    }
+
+    private void report(String name, List<Double> nsPerOp) {
+        double mean = 0;
+        for (double v : nsPerOp) {
+            mean += v;
+        }
+        mean /= nsPerOp.size();
+        double var = 0;
+        for (double v : nsPerOp) {
+            var += (v - mean) * (v - mean);
+        }
+        double err = nsPerOp.size() > 1 ? Math.sqrt(var / (nsPerOp.size() - 1)) : 0;
+        out.printf("%-40s %14.1f %12.1f %14.1f%n", name, mean, err, 1e9 / mean);
+    }
+}
@@ -0,0 +1,10 @@
+package gitlet;
+
+/** Runs every benchmark suite, see Bench for flags. */
+class BenchMain {
+    public static void main(String... args) throws Exception {
+        Bench bench = new Bench(args);
+        HashBench.run(bench);
+        new RepoBench(args).run(bench);
+    }
+}
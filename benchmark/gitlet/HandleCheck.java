@@ -0,0 +1,107 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/** Calls the RepositoryHandle API on the repository in the current
+ *  directory for the J command of testing/tester.py, printing results and
+ *  errors the way the command line prints them. */
+class HandleCheck {
+
+    public static void main(String... args) throws Exception {
+        try {
+            if (args[0].equals("evict")) {
+                evict();
+                return;
+            }
+            RepositoryHandle repo = RepositoryHandle.open(new File("."));
+            switch (args[0]) {
+                case "branches" -> repo.branches().forEach(System.out::println);
+                case "current" -> System.out.println(repo.currentBranch());
+                case "resolve" -> System.out.println(repo.resolve(args[1]));
+                case "log" -> {
+                    for (Commit c : repo.log(args.length > 1 ? args[1] : null)) {
+                        System.out.println(c.getMessage());
+                    }
+                }
+                case "files" -> repo.files(args[1]).keySet().forEach(System.out::println);
+                case "contents" -> System.out.print(
+                        new String(repo.contents(args[1], args[2]), StandardCharsets.UTF_8));
+                case "is-ancestor" -> System.out.println(repo.isAncestor(args[1], args[2]));
+                case "branch" -> repo.branch(args[1], args.length > 2 ? args[2] : null);
+                case "readers" -> readers(repo, Integer.parseInt(args[1]));
+                default -> System.out.println("Incorrect operands.");
+            }
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+    }
+
+    /** Answers of the read calls for every branch. */
+    private static List<Object> answers(RepositoryHandle repo, List<String> branches) {
+        List<Object> res = new ArrayList<>();
+        for (String a : branches) {
+            res.add(repo.resolve(a));
+            res.add(repo.files(a));
+            List<String> messages = new ArrayList<>();
+            for (Commit c : repo.log(a)) {
+                messages.add(c.getMessage());
+            }
+            res.add(messages);
+            for (String b : branches) {
+                res.add(repo.isAncestor(a, b));
+            }
+            for (String fileName : repo.files(a).keySet()) {
+                res.add(Arrays.toString(repo.contents(a, fileName)));
+            }
+        }
+        return res;
+    }
+
+    /** Check that N threads reading while another adds branches all get
+     *  the answers a single reader got before. */
+    private static void readers(RepositoryHandle repo, int n) throws Exception {
+        List<String> branches = repo.branches();
+        List<Object> expected = answers(repo, branches);
+        ExecutorService pool = Executors.newFixedThreadPool(n + 1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int t = 0; t < n; ++t) {
+            results.add(pool.submit(() -> {
+                for (int i = 0; i < 50; ++i) {
+                    if (!answers(repo, branches).equals(expected)) {
+                        return false;
+                    }
+                }
+                return true;
+            }));
+        }
+        Future<?> writer = pool.submit(() -> {
+            for (int i = 0; i < 10; ++i) {
+                repo.branch("reader" + i, branches.get(i % branches.size()));
+            }
+        });
+        writer.get();
+        int agree = 0;
+        for (Future<Boolean> f : results) {
+            agree += f.get() ? 1 : 0;
+        }
+        pool.shutdown();
+        System.out.println(agree + " of " + n + " readers agree");
+        System.out.println(repo.branches().size() - branches.size() + " branches added");
+    }
+
+    /** Print which gets of a cache holding two of three objects load them. */
+    private static void evict() {
+        RepositoryHandle.ObjectCache cache = new RepositoryHandle.ObjectCache(400);
+        StringBuilder loads = new StringBuilder();
+        for (String id : new String[] {"a", "b", "a", "c", "b", "a"}) {
+            cache.get(id, () -> {
+                loads.append(id);
+                return new byte[100];
+            });
+        }
+        System.out.println("loaded " + loads);
+    }
+}
@@ -0,0 +1,63 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Formatter;
+import java.util.Random;
+
+/** Throughput of Utils.sha1 against the previous implementation, which
+ *  called MessageDigest.getInstance per hash and hex-formatted through
+ *  java.util.Formatter, and of streaming file hashing against
+ *  sha1(readContents(file), path) as status and add used to do. */
+class HashBench {
+
+    /** Previous Utils.sha1, kept as the baseline. */
+    static String legacySha1(Object... vals) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            for (Object val : vals) {
+                if (val instanceof byte[]) {
+                    md.update((byte[]) val);
+                } else {
+                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            Formatter result = new Formatter();
+            for (byte b : md.digest()) {
+                result.format("%02x", b);
+            }
+            return result.toString();
+        } catch (Exception excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    static void run(Bench bench) throws Exception {
+        String path = "/home/user/projects/some-checkout/src/main/File.java";
+        byte[] small = new byte[1024];
+        new Random(1).nextBytes(small);
+        bench.run("hash.legacy.1KiB", () -> legacySha1(small, path));
+        bench.run("hash.sha1.1KiB", () -> Utils.sha1(small, path));
+        bench.run("hash.sha1Raw.1KiB", () -> Utils.sha1Raw(small, path));
+        bench.run("hash.legacy.commitKey", () -> legacySha1(path, "", "message", "Thu Jan 1"));
+        bench.run("hash.sha1.commitKey", () -> Utils.sha1(path, "", "message", "Thu Jan 1"));
+
+        for (int size : new int[] {64 << 10, 8 << 20}) {
+            File f = File.createTempFile("hashbench", ".bin");
+            f.deleteOnExit();
+            byte[] data = new byte[size];
+            new Random(size).nextBytes(data);
+            Files.write(f.toPath(), data);
+            String label = (size >> 10) + "KiB";
+            bench.run("hash.legacyFile." + label,
+                () -> legacySha1(Utils.readContents(f), path));
+            bench.run("hash.sha1File." + label, () -> Utils.sha1File(f, path));
+        }
+    }
+
+    public static void main(String... args) throws Exception {
+        run(new Bench(args));
+    }
+}
@@ -0,0 +1,131 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Set;
+
+import static gitlet.Repository.*;
+
+/** Benchmarks of core repository operations on synthetic repositories.
+ *  Flags: --files=N --commits=M --branches=B (defaults 500, 100, 8). */
+class RepoBench {
+
+    private int nFiles = 500;
+    private int nCommits = 100;
+    private int nBranches = 8;
+
+    /** Alternates contents and branches between operations. */
+    private int counter = 0;
+
+    RepoBench(String... args) {
+        for (String arg : args) {
+            if (arg.startsWith("--files=")) {
+                nFiles = Integer.parseInt(arg.substring(8));
+            } else if (arg.startsWith("--commits=")) {
+                nCommits = Integer.parseInt(arg.substring(10));
+            } else if (arg.startsWith("--branches=")) {
+                nBranches = Integer.parseInt(arg.substring(11));
+            }
+        }
+    }
+
+    void run(Bench bench) throws Exception {
+        SyntheticRepo.useScratchDir();
+        // Commands print to System.out, keep only the harness report
+        PrintStream report = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        bench.setReport(report);
+        String size = "[" + nFiles + "f/" + nCommits + "c]";
+
+        Bench.Setup fresh = () -> SyntheticRepo.create(nFiles, nCommits);
+        bench.run("repo.add" + size, fresh, () -> {
+            counter += 1;
+            SyntheticRepo.writeFile(counter % nFiles, counter);
+            Repository.add(SyntheticRepo.fileName(counter % nFiles));
+            return null;
+        });
+        bench.run("repo.commit" + size, fresh, () -> {
+            counter += 1;
+            SyntheticRepo.writeFile(counter % nFiles, counter);
+            Repository.add(SyntheticRepo.fileName(counter % nFiles));
+            Repository.commit("bench " + counter);
+            return null;
+        });
+        bench.run("repo.status" + size, fresh, () -> {
+            Repository.status();
+            return null;
+        });
+        bench.run("repo.log" + size, fresh, () -> {
+            Repository.log();
+            return null;
+        });
+        Bench.Setup branched = () -> {
+            SyntheticRepo.create(nFiles, nCommits);
+            SyntheticRepo.fanOut(nFiles, nBranches);
+            counter = -1;
+        };
+        // Starts on master, odd operations go to br0 and even ones back
+        bench.run("repo.checkoutBranch" + size, branched, () -> {
+            counter += 1;
+            Repository.checkoutBranch(counter % 2 == 0 ? "br0" : "master");
+            return null;
+        });
+        // Every merge consumes one branch, so time a fixed batch
+        bench.run("repo.merge" + size + "x" + nBranches, branched, nBranches, () -> {
+            counter += 1;
+            Repository.merge("br" + (counter % nBranches));
+            return null;
+        });
+
+        Bench.Setup history = () -> SyntheticRepo.create(nFiles, nCommits);
+        history.run();
+        File head = Utils.join(HEADS_DIR, "master");
+        Commit commit = Utils.readObject(
+            Utils.join(OBJ_DIR, Utils.readObject(head, String.class)), Commit.class);
+        CommitGraph graph = CommitGraph.load();
+        TrieIndex trie = Utils.readObject(COMMIT_ID_INDEX, TrieIndex.class);
+        bench.run("serial.commit" + size, () -> roundTrip(commit));
+        bench.run("staging.load" + size, () -> Staging.load().isStagingEmpty());
+        bench.run("serial.commitGraph" + size, () -> roundTrip(graph));
+        bench.run("serial.trieIndex" + size, () -> roundTrip(trie));
+        // Warm handle, commits come from the shared object cache
+        RepositoryHandle handle = RepositoryHandle.open(CWD);
+        bench.run("handle.log" + size, () -> handle.log(null));
+        SyntheticRepo.wipe();
+        System.setOut(report);
+        // In memory only, a commit history far larger than the synthetic repos
+        CommitGraph big = syntheticGraph(100_000);
+        bench.run("graph.bisect[100000c]", () -> Bisect.step(big, big.size() - 1,
+                List.of(0), Set.of()));
+        bench.run("graph.between[100000c]", () -> big.between(40_000_000L, 41_000_000L));
+    }
+
+    /** Return graph of N commits on a main line, every 50th merging a side
+     *  line that forked 40 commits earlier. */
+    static CommitGraph syntheticGraph(int n) {
+        CommitGraph graph = new CommitGraph();
+        for (int i = 0; i < n; ++i) {
+            String id = Utils.sha1(Integer.toString(i));
+            boolean merge = i >= 100 && i % 50 == 0;
+            graph.append(id, i == 0 ? CommitGraph.NONE : i - 1, merge ? i - 40 : CommitGraph.NONE, i * 1000L);
+        }
+        return graph;
+    }
+
+    /** Serialize OBJ and read it back. */
+    static Object roundTrip(Serializable obj) throws Exception {
+        byte[] bytes = Utils.serialize(obj);
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+
+    public static void main(String... args) throws Exception {
+        new RepoBench(args).run(new Bench(args));
+    }
+}
@@ -0,0 +1,233 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static gitlet.Repository.*;
+
+/** Builds synthetic repositories in Repository.CWD for the benchmarks.
+ *  Repository reads the working directory once from user.dir, so
+ *  SyntheticRepo.useScratchDir must run before Repository is loaded.
+ *  The main method builds them in the current directory for the scale
+ *  scenarios of testing/tester.py --perf. */
+class SyntheticRepo {
+
+    /** Build in the current directory as ARGS say, one of
+     *    files N             write N untracked files,
+     *    add N               add files 0 to N - 1,
+     *    large NAME K V      write version V of a K KiB file NAME,
+     *    legacy              key the repository by absolute paths, see legacy,
+     *    history F C         fresh repo, see create,
+     *    fanout F C B        fresh repo, see create and fanOut,
+     *    wide F              fresh repo, see wide. */
+    public static void main(String... args) throws IOException {
+        // Commands print to System.out, the tester only wants errors
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        int[] n = new int[args.length - 1];
+        for (int i = 1; i < args.length; ++i) {
+            n[i - 1] = args[i].chars().allMatch(Character::isDigit) ? Integer.parseInt(args[i]) : 0;
+        }
+        switch (args[0]) {
+            case "files" -> {
+                for (int i = 0; i < n[0]; ++i) {
+                    writeFile(i, 0);
+                }
+            }
+            case "large" -> writeLarge(args[1], n[1], n[2]);
+            case "legacy" -> legacy();
+            case "add" -> {
+                for (int i = 0; i < n[0]; ++i) {
+                    Repository.add(fileName(i));
+                }
+            }
+            case "history" -> create(n[0], n[1]);
+            case "fanout" -> {
+                create(n[0], n[1]);
+                fanOut(n[0], n[2]);
+            }
+            case "wide" -> wide(n[0]);
+            default -> throw new IllegalArgumentException("Unknown scenario " + args[0]);
+        }
+    }
+
+    /** Point user.dir to a new empty scratch directory. */
+    static File useScratchDir() throws IOException {
+        File dir = Files.createTempDirectory("gitlet-bench").toFile();
+        System.setProperty("user.dir", dir.getPath());
+        return dir;
+    }
+
+    /** Name of the I-th generated file. */
+    static String fileName(int i) {
+        return "file" + i + ".txt";
+    }
+
+    /** Remove everything in CWD, .gitlet included. */
+    static void wipe() throws IOException {
+        try (Stream<Path> walk = Files.walk(CWD.toPath())) {
+            walk.sorted(Comparator.reverseOrder())
+                .filter(p -> !p.equals(CWD.toPath()))
+                .forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /** Write generated contents of version V to file I. */
+    static void writeFile(int i, int v) {
+        StringBuilder sb = new StringBuilder();
+        for (int line = 0; line < 20; ++line) {
+            sb.append("file ").append(i).append(" line ").append(line)
+              .append(" version ").append(v).append('\n');
+        }
+        Utils.writeContents(Utils.join(CWD, fileName(i)), sb.toString());
+    }
+
+    /** Fresh repo with NFILES committed files, then NCOMMITS commits on
+     *  master that each change one file. */
+    static void create(int nFiles, int nCommits) throws IOException {
+        wipe();
+        Repository.init();
+        for (int i = 0; i < nFiles; ++i) {
+            writeFile(i, 0);
+            Repository.add(fileName(i));
+        }
+        Repository.commit("add " + nFiles + " files");
+        for (int c = 1; c <= nCommits; ++c) {
+            int i = c % nFiles;
+            writeFile(i, c);
+            Repository.add(fileName(i));
+            Repository.commit("commit " + c);
+        }
+    }
+
+    /** Fan out NBRANCHES branches named br0, br1... from master, each with
+     *  one commit changing its own file, then advance master once so
+     *  merging any branch is a real three-way merge. */
+    static void fanOut(int nFiles, int nBranches) {
+        for (int b = 0; b < nBranches; ++b) {
+            Repository.branch("br" + b);
+        }
+        for (int b = 0; b < nBranches; ++b) {
+            Repository.checkoutBranch("br" + b);
+            int i = b % nFiles;
+            writeFile(i, -1 - b);
+            Repository.add(fileName(i));
+            Repository.commit("branch " + b);
+        }
+        Repository.checkoutBranch("master");
+        int last = nFiles - 1;
+        writeFile(last, -1000);
+        Repository.add(fileName(last));
+        Repository.commit("advance master");
+    }
+
+    /** Write version V of file NAME with KIB KiB of numbered lines, versions
+     *  differ in one line in the middle so they share most chunks. */
+    static void writeLarge(String name, int kib, int v) {
+        StringBuilder sb = new StringBuilder();
+        int lines = kib * 1024 / 27;
+        for (int line = 0; line < lines; ++line) {
+            sb.append(String.format("large line %011d", line));
+            sb.append(line == lines / 2 ? String.format("v%03d", v) : "    ").append('\n');
+        }
+        Utils.writeContents(Utils.join(CWD, name), sb.toString());
+    }
+
+    /** Rewrite the repository in CWD the way it was saved before RepoPath
+     *  keys, every path absolute and no format file, so migrate has a
+     *  repository to convert. */
+    static void legacy() {
+        String root = CWD.toPath().toAbsolutePath().normalize() + "/";
+        Map<String, String> newIDs = new HashMap<>();
+        Map<String, Commit> commits = new HashMap<>();
+        for (String name : Utils.plainFilenamesIn(OBJ_DIR)) {
+            if (name.length() != Utils.UID_LENGTH) {
+                continue;
+            }
+            Serializable obj = Utils.readObject(Utils.join(OBJ_DIR, name), Serializable.class);
+            if (obj instanceof Commit) {
+                commits.put(name, (Commit) obj);
+                continue;
+            }
+            String id;
+            if (obj instanceof ChunkedBlob) {
+                ChunkedBlob blob = ((ChunkedBlob) obj).withPath(root + ((ChunkedBlob) obj).getFilePath());
+                id = blob.getBlobID();
+                obj = blob;
+            } else {
+                Blob blob = new Blob(root + ((Blob) obj).getFilePath(), ((Blob) obj).getContents());
+                id = blob.getBlobID();
+                obj = blob;
+            }
+            Utils.writeObject(Utils.join(OBJ_DIR, id), obj);
+            newIDs.put(name, id);
+        }
+        for (String id : commits.keySet()) {
+            legacyCommit(id, commits, newIDs, root);
+        }
+        Staging.load().rekey(path -> root + path, newIDs);
+        for (String branch : Utils.plainFilenamesIn(HEADS_DIR)) {
+            File ref = Utils.join(HEADS_DIR, branch);
+            String id = Utils.readObject(ref, String.class);
+            Utils.writeObject(ref, newIDs.getOrDefault(id, id));
+        }
+        for (Map.Entry<String, String> e : newIDs.entrySet()) {
+            if (!e.getKey().equals(e.getValue())) {
+                Utils.join(OBJ_DIR, e.getKey()).delete();
+            }
+        }
+        REPO_FORMAT.delete();
+        COMMIT_GRAPH.delete();
+        COMMIT_BITMAPS.delete();
+        COMMIT_ID_INDEX.delete();
+    }
+
+    /** Save commit ID of COMMITS keyed by absolute paths, parents first. */
+    private static void legacyCommit(String id, Map<String, Commit> commits,
+                                     Map<String, String> newIDs, String root) {
+        Commit c = commits.get(id);
+        if (c == null || newIDs.containsKey(id)) {
+            return;
+        }
+        legacyCommit(c.getFirstParentID(), commits, newIDs, root);
+        if (c.getMergeParentID() != null) {
+            legacyCommit(c.getMergeParentID(), commits, newIDs, root);
+        }
+        Map<String, String> tree = new TreeMap<>();
+        for (Map.Entry<String, String> e : c.getSavedBlobs().entrySet()) {
+            tree.put(root + e.getKey(), newIDs.get(e.getValue()));
+        }
+        Commit res = new Commit(c, tree, newIDs);
+        res.saveObject();
+        newIDs.put(id, res.getID());
+    }
+
+    /** Fresh repo with NFILES committed files and a branch named other that
+     *  changed the first half of them while master changed the second half,
+     *  so merging other touches every file. */
+    static void wide(int nFiles) throws IOException {
+        create(nFiles, 0);
+        Repository.branch("other");
+        Repository.checkoutBranch("other");
+        for (int i = 0; i < nFiles / 2; ++i) {
+            writeFile(i, 1);
+            Repository.add(fileName(i));
+        }
+        Repository.commit("change first half");
+        Repository.checkoutBranch("master");
+        for (int i = nFiles / 2; i < nFiles; ++i) {
+            writeFile(i, 2);
+            Repository.add(fileName(i));
+        }
+        Repository.commit("change second half");
+    }
+}
@@ -0,0 +1,214 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/** Archive writes the files of a commit as a tar or zip stream, in path
+ *  order and with the commit time on every entry, so one commit always
+ *  gives the same bytes. Blobs are read from OBJ_DIR by a pool of workers
+ *  a bounded number of files ahead of the writer, chunked blobs are copied
+ *  one chunk at a time, so memory stays bounded whatever the commit holds.
+ */
+public class Archive {
+
+    /** Max number of files read ahead per worker. */
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+
+    /** Bytes of a tar header and of the blocks data is padded to. */
+    private static final int BLOCK = 512;
+
+    /** Tar output is padded to a multiple of this, as tar itself does. */
+    private static final int RECORD = 20 * BLOCK;
+
+    /** Write files of COMMIT to OUT as FORMAT, tar or zip, then close OUT. */
+    public static void write(Commit commit, String format, OutputStream out) {
+        long time = commit.getTime();
+        Map<String, String> files = commit.getSavedBlobs();
+        int nThreads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        try (OutputStream o = out) {
+            Writer w = format.equals("zip") ? new ZipWriter(o) : new TarWriter(o);
+            // Read ahead in a window, write in path order
+            Deque<Future<Serializable>> window = new ArrayDeque<>();
+            Iterator<Map.Entry<String, String>> next = files.entrySet().iterator();
+            Iterator<String> names = files.keySet().iterator();
+            int limit = nThreads * IN_FLIGHT_PER_THREAD;
+            while (next.hasNext() || !window.isEmpty()) {
+                while (next.hasNext() && window.size() < limit) {
+                    String blobID = next.next().getValue();
+                    window.add(pool.submit(() -> Utils.readObject(PartialClone.object(blobID),
+                            Serializable.class)));
+                }
+                Serializable obj = window.poll().get();
+                String name = names.next();
+                if (obj instanceof ChunkedBlob) {
+                    ChunkedBlob blob = (ChunkedBlob) obj;
+                    w.begin(name, blob.size(), time);
+                    for (String chunkID : blob.getChunkIDs()) {
+                        w.data(Utils.readContents(Utils.join(Repository.CHUNK_DIR, chunkID)));
+                    }
+                } else {
+                    byte[] contents = ((Blob) obj).getContents();
+                    w.begin(name, contents.length, time);
+                    w.data(contents);
+                }
+                w.end();
+            }
+            w.finish();
+            Trace.count("archive.files", files.size());
+        } catch (IOException | InterruptedException | ExecutionException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Entries of an archive, each is begin, data of the given size, end. */
+    private interface Writer {
+        void begin(String name, long size, long time) throws IOException;
+        void data(byte[] bytes) throws IOException;
+        void end() throws IOException;
+        void finish() throws IOException;
+    }
+
+    /** POSIX ustar, paths too long for a header go in a pax header. */
+    private static class TarWriter implements Writer {
+        private final OutputStream out;
+        /** Bytes written so far, headers and data are padded to blocks. */
+        private long written = 0;
+
+        TarWriter(OutputStream out) {
+            this.out = new BufferedOutputStream(out, 1 << 16);
+        }
+
+        @Override
+        public void begin(String name, long size, long time) throws IOException {
+            byte[] path = name.getBytes(StandardCharsets.UTF_8);
+            int split = splitPath(path);
+            if (split < 0) {
+                // Record length counts itself, so find the fixed point
+                String rest = " path=" + name + "\n";
+                int len = rest.getBytes(StandardCharsets.UTF_8).length;
+                int n = len + Integer.toString(len).length();
+                n = len + Integer.toString(n).length();
+                byte[] pax = (n + rest).getBytes(StandardCharsets.UTF_8);
+                header("PaxHeader/" + Math.abs(name.hashCode()), 'x', pax.length, time);
+                data(pax);
+                end();
+                String base = name.substring(name.lastIndexOf('/') + 1);
+                header(base.length() > 100 ? base.substring(0, 100) : base, '0', size, time);
+            } else {
+                header(name, '0', size, time);
+            }
+        }
+
+        /** Return index of the '/' splitting PATH into a 155 byte prefix and
+         *  100 byte name, 0 if it fits in name alone, -1 if it cannot. */
+        private static int splitPath(byte[] path) {
+            if (path.length <= 100) {
+                return 0;
+            }
+            for (int i = Math.min(path.length - 1, 155); i > 0; --i) {
+                if (path[i] == '/' && path.length - i - 1 <= 100) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void header(String name, char type, long size, long time) throws IOException {
+            byte[] h = new byte[BLOCK];
+            byte[] path = name.getBytes(StandardCharsets.UTF_8);
+            int split = splitPath(path);
+            if (split > 0) {
+                System.arraycopy(path, split + 1, h, 0, path.length - split - 1);
+                System.arraycopy(path, 0, h, 345, split);
+            } else {
+                System.arraycopy(path, 0, h, 0, Math.min(path.length, 100));
+            }
+            octal(h, 100, 8, 0644);
+            octal(h, 108, 8, 0);
+            octal(h, 116, 8, 0);
+            octal(h, 124, 12, size);
+            octal(h, 136, 12, time / 1000);
+            h[156] = (byte) type;
+            System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, h, 257, 8);
+            // Checksum counts its own field as spaces
+            Arrays.fill(h, 148, 156, (byte) ' ');
+            int sum = 0;
+            for (byte b : h) {
+                sum += b & 0xff;
+            }
+            octal(h, 148, 7, sum);
+            h[155] = ' ';
+            out.write(h);
+            written += BLOCK;
+        }
+
+        /** Write V as zero padded octal in LEN - 1 digits and a NUL at OFF. */
+        private static void octal(byte[] h, int off, int len, long v) {
+            String s = Long.toOctalString(v);
+            byte[] digits = ("0".repeat(Math.max(0, len - 1 - s.length())) + s)
+                    .getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(digits, 0, h, off, len - 1);
+            h[off + len - 1] = 0;
+        }
+
+        @Override
+        public void data(byte[] bytes) throws IOException {
+            out.write(bytes);
+            written += bytes.length;
+        }
+
+        @Override
+        public void end() throws IOException {
+            int pad = (int) ((BLOCK - written % BLOCK) % BLOCK);
+            out.write(new byte[pad]);
+            written += pad;
+        }
+
+        @Override
+        public void finish() throws IOException {
+            // Two zero blocks end the archive
+            long total = written + 2 * BLOCK;
+            out.write(new byte[(int) (2 * BLOCK + (RECORD - total % RECORD) % RECORD)]);
+            out.flush();
+        }
+    }
+
+    /** Zip with deflated entries. */
+    private static class ZipWriter implements Writer {
+        private final ZipOutputStream out;
+
+        ZipWriter(OutputStream out) {
+            this.out = new ZipOutputStream(new BufferedOutputStream(out, 1 << 16));
+        }
+
+        @Override
+        public void begin(String name, long size, long time) throws IOException {
+            ZipEntry e = new ZipEntry(name);
+            e.setTime(time);
+            out.putNextEntry(e);
+        }
+
+        @Override
+        public void data(byte[] bytes) throws IOException {
+            out.write(bytes);
+        }
+
+        @Override
+        public void end() throws IOException {
+            out.closeEntry();
+        }
+
+        @Override
+        public void finish() throws IOException {
+            out.finish();
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static gitlet.Repository.*;
+
+/** Bisect finds the commit that introduced a bug by binary search over the
+ *  history DAG. Candidates are ancestors of the bad commit that are not
+ *  ancestors of a good one. Each step tests the candidate whose ancestors
+ *  split the candidates most evenly. Everything is computed on CommitGraph
+ *  positions: a commit with one candidate parent has one ancestor more than
+ *  that parent, a merge adds to its first parent only the ancestors of its
+ *  other parent that the first does not reach, found by walking both down
+ *  to where they meet. A step costs a few passes over int arrays plus the
+ *  side branches of merges, and never reads a Commit object.
+ *
+ *  The tested commit is checked out on branch BRANCH, BISECT holds the
+ *  branch to go back to, then one "bad ID", "good ID" or "skip ID" line
+ *  per mark.
+ */
+public class Bisect {
+
+    /** Branch of the commit under test. */
+    static final String BRANCH = "bisect";
+
+    /** Next commit to test. */
+    static class Step {
+        /** Position to test, NONE if all candidates left are skipped. */
+        final int pos;
+        /** Number of candidates, the bad commit included. */
+        final int candidates;
+        /** Candidates that are POS or its ancestors. */
+        final int weight;
+
+        Step(int pos, int candidates, int weight) {
+            this.pos = pos;
+            this.candidates = candidates;
+            this.weight = weight;
+        }
+    }
+
+    /** Return next commit to test between BAD and GOODS in GRAPH, never one
+     *  in SKIPPED. If only BAD is left, POS is BAD. */
+    static Step step(CommitGraph graph, int bad, List<Integer> goods, Set<Integer> skipped) {
+        int size = graph.size();
+        int[] stack = new int[2 * size + 2];
+        // Ancestors of good commits are good
+        boolean[] good = new boolean[size];
+        for (int g : goods) {
+            walk(graph, g, good, null, stack);
+        }
+        boolean[] cand = new boolean[size];
+        int n = walk(graph, bad, cand, good, stack);
+        if (n <= 1) {
+            return new Step(bad, n, n);
+        }
+        // Parents have smaller positions, so their weights are known first
+        int[] weight = new int[bad + 1];
+        Paint paint = new Paint(graph, cand, bad + 1);
+        int best = CommitGraph.NONE;
+        int bestScore = -1;
+        int merges = 0;
+        for (int pos = 0; pos <= bad; ++pos) {
+            if (!cand[pos]) {
+                continue;
+            }
+            int p1 = graph.firstParent(pos);
+            int p2 = graph.mergeParent(pos);
+            boolean in1 = p1 != CommitGraph.NONE && cand[p1];
+            boolean in2 = p2 != CommitGraph.NONE && cand[p2];
+            if (in1 && in2) {
+                // Both sides share ancestors, add only those not below p1
+                weight[pos] = 1 + weight[p1] + paint.onlyBelow(p2, p1, pos + 1);
+                merges += 1;
+            } else {
+                weight[pos] = 1 + (in1 ? weight[p1] : in2 ? weight[p2] : 0);
+            }
+            int score = Math.min(weight[pos], n - weight[pos]);
+            if (score > bestScore && !skipped.contains(pos)) {
+                best = pos;
+                bestScore = score;
+                if (2 * score >= n - 1) {
+                    // Halves as evenly as possible, nothing can do better
+                    break;
+                }
+            }
+        }
+        Trace.count("bisect.candidates", n);
+        Trace.count("bisect.merges", merges);
+        if (bestScore <= 0) {
+            return new Step(CommitGraph.NONE, n, 0);
+        }
+        return new Step(best, n, weight[best]);
+    }
+
+    /** Mark START and its ancestors not in STOP, return how many were new. */
+    private static int walk(CommitGraph graph, int start, boolean[] mark, boolean[] stop, int[] stack) {
+        int top = 0;
+        int res = 0;
+        stack[top++] = start;
+        while (top > 0) {
+            int pos = stack[--top];
+            if (pos == CommitGraph.NONE || mark[pos] || (stop != null && stop[pos])) {
+                continue;
+            }
+            mark[pos] = true;
+            res += 1;
+            stack[top++] = graph.firstParent(pos);
+            stack[top++] = graph.mergeParent(pos);
+        }
+        return res;
+    }
+
+    /** Walks from two commits at once in decreasing position, so every
+     *  commit is seen after all its children and knows which sides reach it. */
+    private static class Paint {
+        private final CommitGraph graph;
+        private final boolean[] cand;
+        /** Stamp of the walk that reached a position from each side. */
+        private final int[] fromA;
+        private final int[] fromB;
+        /** Max-heap of positions reached but not yet walked. */
+        private final int[] heap;
+        private int heapSize;
+        private int stamp;
+        /** Positions in the heap reached from B only. */
+        private int onlyB;
+
+        Paint(CommitGraph graph, boolean[] cand, int size) {
+            this.graph = graph;
+            this.cand = cand;
+            this.fromA = new int[size];
+            this.fromB = new int[size];
+            this.heap = new int[size];
+        }
+
+        /** Return number of candidates that are B or its ancestors but not A
+         *  or its ancestors, STAMP must differ between calls. The walk stops
+         *  once every position left is reached from A. */
+        int onlyBelow(int b, int a, int stamp) {
+            this.stamp = stamp;
+            heapSize = 0;
+            onlyB = 0;
+            reachA(a);
+            reachB(b);
+            int res = 0;
+            while (onlyB > 0) {
+                int pos = pop();
+                if (fromA[pos] == stamp) {
+                    reachA(graph.firstParent(pos));
+                    reachA(graph.mergeParent(pos));
+                } else {
+                    onlyB -= 1;
+                    res += 1;
+                    reachB(graph.firstParent(pos));
+                    reachB(graph.mergeParent(pos));
+                }
+            }
+            return res;
+        }
+
+        private void reachA(int pos) {
+            if (pos == CommitGraph.NONE || !cand[pos] || fromA[pos] == stamp) {
+                return;
+            }
+            fromA[pos] = stamp;
+            if (fromB[pos] == stamp) {
+                onlyB -= 1;
+            } else {
+                push(pos);
+            }
+        }
+
+        private void reachB(int pos) {
+            if (pos == CommitGraph.NONE || !cand[pos] || fromB[pos] == stamp) {
+                return;
+            }
+            fromB[pos] = stamp;
+            if (fromA[pos] != stamp) {
+                onlyB += 1;
+                push(pos);
+            }
+        }
+
+        private void push(int pos) {
+            int i = heapSize++;
+            while (i > 0 && heap[(i - 1) / 2] < pos) {
+                heap[i] = heap[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            heap[i] = pos;
+        }
+
+        private int pop() {
+            int res = heap[0];
+            int last = heap[--heapSize];
+            int i = 0;
+            while (2 * i + 1 < heapSize) {
+                int c = 2 * i + 1;
+                if (c + 1 < heapSize && heap[c + 1] > heap[c]) {
+                    c += 1;
+                }
+                if (heap[c] <= last) {
+                    break;
+                }
+                heap[i] = heap[c];
+                i = c;
+            }
+            heap[i] = last;
+            return res;
+        }
+    }
+
+    /** Begin bisecting, REVS are the bad commit then good ones. */
+    public static void start(List<String> revs) {
+        if (BISECT.exists()) {
+            throw new GitletException("Already bisecting, run gitlet bisect reset first.");
+        }
+        if (Utils.join(HEADS_DIR, BRANCH).exists()) {
+            throw new GitletException("A branch named " + BRANCH + " already exists.");
+        }
+        if (!Staging.load().isStagingEmpty()) {
+            throw new GitletException("You have uncommitted changes.");
+        }
+        StringBuilder sb = new StringBuilder(Utils.readObject(HEAD, String.class)).append('\n');
+        for (int i = 0; i < revs.size(); ++i) {
+            sb.append(i == 0 ? "bad " : "good ").append(resolve(revs.get(i))).append('\n');
+        }
+        next(sb.toString());
+    }
+
+    /** Mark REV, the checked out commit if null, as KIND (good, bad or skip)
+     *  and check out the next commit. Return true when bisecting is done. */
+    public static boolean mark(String kind, String rev) {
+        if (!BISECT.exists()) {
+            throw new GitletException("Not bisecting.");
+        }
+        String id = rev == null ? headID() : resolve(rev);
+        return next(Utils.readContentsAsString(BISECT) + kind + " " + id + "\n");
+    }
+
+    /** Save bisect STATE, then check out the next commit to test or report
+     *  the first bad commit. The working tree is checked first, so if it
+     *  is in the way nothing is saved, printed or written. Return true when
+     *  there is nothing left to test. */
+    private static boolean next(String state) {
+        List<String> bads = marked(state, "bad");
+        List<String> goods = marked(state, "good");
+        List<String> skips = marked(state, "skip");
+        if (bads.isEmpty() || goods.isEmpty()) {
+            Utils.writeContents(BISECT, state);
+            System.out.println("Waiting for both good and bad commits.");
+            return false;
+        }
+        // Later bad marks are candidates of earlier ones, so the last is lowest
+        String bad = bads.get(bads.size() - 1);
+        // Commits named by ID may not be on any branch yet
+        CommitGraph.register(bad);
+        for (String id : goods) {
+            CommitGraph.register(id);
+        }
+        CommitGraph graph = CommitGraph.load();
+        List<Integer> goodPos = new ArrayList<>();
+        for (String id : goods) {
+            goodPos.add(graph.position(id));
+        }
+        Set<Integer> skipPos = new HashSet<>();
+        for (String id : skips) {
+            skipPos.add(graph.position(id));
+        }
+        Trace.Region region = Trace.region("bisect.step");
+        Step s = step(graph, graph.position(bad), goodPos, skipPos);
+        region.close();
+        if (s.candidates > 1 && s.pos != CommitGraph.NONE) {
+            checkWorkingTree(tree(headID()), tree(graph.id(s.pos)));
+        }
+        Utils.writeContents(BISECT, state);
+        if (s.candidates <= 1) {
+            System.out.println(bad + " is the first bad commit");
+            Utils.readObject(Utils.join(OBJ_DIR, bad), Commit.class).printLogInfo();
+            return true;
+        }
+        if (s.pos == CommitGraph.NONE) {
+            System.out.println("There are only skipped commits left to test.");
+            return true;
+        }
+        int left = Math.max(s.weight - 1, s.candidates - s.weight - 1);
+        int steps = 32 - Integer.numberOfLeadingZeros(left);
+        System.out.println("Bisecting: " + left + " revisions left to test after this (roughly "
+                + steps + " steps)");
+        checkout(graph.id(s.pos));
+        return false;
+    }
+
+    /** Return commitIDs marked KIND in BISECT, in order. */
+    private static List<String> marked(String kind) {
+        return marked(Utils.readContentsAsString(BISECT), kind);
+    }
+
+    /** Return commitIDs marked KIND in bisect STATE, in order. */
+    private static List<String> marked(String state, String kind) {
+        List<String> res = new ArrayList<>();
+        String[] lines = state.split("\n");
+        for (int i = 1; i < lines.length; ++i) {
+            if (lines[i].startsWith(kind + " ")) {
+                res.add(lines[i].substring(kind.length() + 1));
+            }
+        }
+        return res;
+    }
+
+    /** Write commit ID to the working tree and check out BRANCH there. */
+    private static void checkout(String id) {
+        String oldID = headID();
+        updateWorkingTree(tree(oldID), tree(id));
+        boolean onBranch = Utils.readObject(HEAD, String.class).equals(BRANCH);
+        Reflog.update(BRANCH, id, "bisect");
+        if (!onBranch) {
+            Utils.writeObject(HEAD, BRANCH);
+            Reflog.append(Reflog.logOf(Reflog.HEAD_REF), oldID, id, "checkout");
+        }
+    }
+
+    /** Return files of commit ID. */
+    private static Map<String, String> tree(String id) {
+        return Utils.readObject(Utils.join(OBJ_DIR, id), Commit.class).getSavedBlobs();
+    }
+
+    /** Go back to the branch bisect started on and forget bisect state. */
+    public static void reset() {
+        if (!BISECT.exists()) {
+            throw new GitletException("Not bisecting.");
+        }
+        String branch = Utils.readContentsAsString(BISECT).split("\n")[0];
+        File ref = Utils.join(HEADS_DIR, BRANCH);
+        if (Utils.readObject(HEAD, String.class).equals(BRANCH)) {
+            String oldID = headID();
+            String id = Utils.readObject(Utils.join(HEADS_DIR, branch), String.class);
+            checkWorkingTree(tree(oldID), tree(id));
+            updateWorkingTree(tree(oldID), tree(id));
+            Utils.writeObject(HEAD, branch);
+            Reflog.append(Reflog.logOf(Reflog.HEAD_REF), oldID, id, "checkout");
+        }
+        ref.delete();
+        Reflog.logOf(BRANCH).delete();
+        BISECT.delete();
+        Staging.load().rmStagingArea();
+    }
+
+    /** Run CMD in CWD on each commit to test: exit code 0 is good, 125 skip,
+     *  other codes below 128 bad. */
+    public static void run(List<String> cmd) {
+        if (!BISECT.exists()) {
+            throw new GitletException("Not bisecting.");
+        }
+        if (marked("bad").isEmpty() || marked("good").isEmpty()) {
+            throw new GitletException("Mark a good and a bad commit before bisect run.");
+        }
+        while (true) {
+            int code;
+            try {
+                Process p = new ProcessBuilder(cmd).directory(CWD).inheritIO().start();
+                code = p.waitFor();
+            } catch (IOException | InterruptedException excp) {
+                throw new GitletException("bisect run failed: " + excp.getMessage());
+            }
+            if (code < 0 || code >= 128) {
+                throw new GitletException("bisect run failed: exit code " + code + ".");
+            }
+            if (mark(code == 0 ? "good" : code == 125 ? "skip" : "bad", null)) {
+                return;
+            }
+        }
+    }
+
+    /** Return commitID of REV, a branch name or full or abbreviated commitID. */
+    private static String resolve(String rev) {
+        File ref = Utils.join(HEADS_DIR, rev);
+        String id = ref.isFile() ? Utils.readObject(ref, String.class) : resolveCommitID(rev);
+        if (id == null) {
+            throw new GitletException("No commit with that id exists.");
+        }
+        return id;
+    }
+
+    /** Return ID of the checked out commit. */
+    private static String headID() {
+        return Utils.readObject(Utils.join(HEADS_DIR, Utils.readObject(HEAD, String.class)), String.class);
+    }
+}
@@ -0,0 +1,115 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static gitlet.Repository.*;
+
+/** Blame attributes each line of a file to the commit that last changed it.
+ *  The first-parent chain is walked using savedBlobs lookups only, so
+ *  commits that did not change the file cost no blob reads or diffs. Line
+ *  origins of the last few blamed commits are kept per file in BLAME_DIR,
+ *  a later blame only walks back to the newest of them and diffs forward.
+ */
+public class Blame implements Serializable {
+
+    /** Blamed commits kept per file. */
+    private static final int CACHED_COMMITS = 8;
+
+    /** Line origins of one version of the file. */
+    private static class Entry implements Serializable {
+        private final String blobID;
+        private final String[] origins;
+
+        Entry(String blobID, String[] origins) {
+            this.blobID = blobID;
+            this.origins = origins;
+        }
+    }
+
+    /** CommitID -> line origins at that commit, least recently used first. */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Print each line of FILEPATH at commit HEAD with the commit it came from. */
+    public static void blame(Commit head, String filePath) {
+        File cacheFile = Utils.join(BLAME_DIR, Utils.sha1(filePath));
+        Blame cache = cacheFile.exists()
+                ? Utils.readObject(cacheFile, Blame.class) : new Blame();
+        Entry entry = cache.update(head, filePath);
+        if (cache.entries.size() > CACHED_COMMITS) {
+            cache.entries.remove(cache.entries.keySet().iterator().next());
+        }
+        BLAME_DIR.mkdirs();
+        Utils.writeObject(cacheFile, cache);
+        String[] lines = readLines(entry.blobID);
+        for (int i = 0; i < lines.length; ++i) {
+            System.out.println(entry.origins[i].substring(0, 8) + " " + (i + 1) + ") " + lines[i]);
+        }
+    }
+
+    /** Return line origins of FILEPATH at HEAD, reusing the newest cached
+     *  commit on its first-parent chain. */
+    private Entry update(Commit head, String filePath) {
+        Trace.Region region = Trace.region("blame.walk");
+        // Commits newest first, each with blobID of the file
+        List<String> commits = new ArrayList<>();
+        List<String> blobIDs = new ArrayList<>();
+        Entry base = null;
+        Commit cur = head;
+        while (true) {
+            base = entries.get(cur.getID());
+            if (base != null) {
+                break;
+            }
+            String blobID = cur.getCommitFileBlobID(filePath);
+            if (blobID.equals("")) {
+                break;
+            }
+            commits.add(cur.getID());
+            blobIDs.add(blobID);
+            if (cur.getFirstParentID().equals("") || PartialClone.isShallow(cur.getID())) {
+                break;
+            }
+            cur = Utils.readObject(Utils.join(OBJ_DIR, cur.getFirstParentID()), Commit.class);
+        }
+        region.close();
+        Trace.count("blame.commits", commits.size());
+        region = Trace.region("blame.diff");
+        if (base == null) {
+            base = new Entry("", new String[0]);
+        }
+        String[] lines = base.blobID.equals("") ? new String[0] : readLines(base.blobID);
+        for (int i = commits.size() - 1; i >= 0; --i) {
+            if (blobIDs.get(i).equals(base.blobID)) {
+                continue;
+            }
+            // Only commits that changed the blob are diffed
+            Trace.count("blame.diffs");
+            String[] next = readLines(blobIDs.get(i));
+            int[] match = Diff.match(lines, next);
+            String[] origins = new String[next.length];
+            for (int j = 0; j < next.length; ++j) {
+                origins[j] = match[j] >= 0 ? base.origins[match[j]] : commits.get(i);
+            }
+            base = new Entry(blobIDs.get(i), origins);
+            lines = next;
+        }
+        entries.put(head.getID(), base);
+        region.close();
+        return base;
+    }
+
+    /** Return lines of blob with BLOBID, without line terminators. */
+    private static String[] readLines(String blobID) {
+        String s = new String(Blob.readContents(blobID), StandardCharsets.UTF_8);
+        if (s.isEmpty()) {
+            return new String[0];
+        }
+        if (s.endsWith("\n")) {
+            s = s.substring(0, s.length() - 1);
+        }
+        return s.split("\n", -1);
+    }
+}
@@ -1,9 +1,15 @@
 package gitlet;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
 
+import static gitlet.Repository.*;
+
 /**
  * Blob is an abstraction above basic file metadata.
  * In staging area, One blob match with one staged file.
@@ -12,10 +18,13 @@ import java.util.*;
 
 public class Blob implements Serializable {
 
+    /** Pinned so objects written by earlier builds stay readable. */
+    private static final long serialVersionUID = 2043207123418726265L;
+
     /** Specifier of this blob, by SHA-1 hashing. */
     private final String blobID;
 
-    /** Path of this file in fileName.getPath(). */
+    /** Path of this file, a RepoPath key. */
     private final String filePath;
 
     /** String representation of file. */
@@ -23,17 +32,29 @@ public class Blob implements Serializable {
 
     /** One blob match with one file. */
     Blob(File file) {
-        this.filePath = file.getPath();
+        this.filePath = RepoPath.of(file);
         this.contents = Utils.readContents(file);
         this.blobID = Utils.sha1(contents, filePath);
     }
 
+    /** Blob of FILEPATH with CONTENTS, for contents made without a file. */
+    Blob(String filePath, byte[] contents) {
+        this.filePath = filePath;
+        this.contents = contents;
+        this.blobID = Utils.sha1(contents, filePath);
+    }
+
+    /** Re-hash contents and check them against blobID. */
+    public boolean hasValidID() {
+        return blobID.equals(Utils.sha1(contents, filePath));
+    }
+
     /** Return blobID as value of HashMap. */
     public String getBlobID() {
         return blobID;
     }
 
-    /** Return filePath, use substring to get fileName. */
+    /** Return filePath, the RepoPath key of this file. */
     public String getFilePath() {
         return filePath;
     }
@@ -42,4 +63,49 @@ public class Blob implements Serializable {
     public byte[] getContents() {
         return contents;
     }
+
+    /** Return contents of blob saved in obj folder, whole or chunked. */
+    public static byte[] readContents(String blobID) {
+        Serializable obj = Utils.readObject(PartialClone.object(blobID), Serializable.class);
+        if (obj instanceof ChunkedBlob) {
+            return ((ChunkedBlob) obj).getContents();
+        }
+        return ((Blob) obj).getContents();
+    }
+
+    /** Return an ID of the contents of blob BLOBID alone, equal for equal
+     *  contents at any path. Chunked blobs give it without reading chunks. */
+    public static String contentID(String blobID) {
+        Serializable obj = Utils.readObject(PartialClone.object(blobID), Serializable.class);
+        if (obj instanceof ChunkedBlob) {
+            return ((ChunkedBlob) obj).contentID();
+        }
+        byte[] contents = ((Blob) obj).getContents();
+        if (contents.length >= ChunkedBlob.CHUNK_THRESHOLD) {
+            return ChunkedBlob.contentID(new ByteArrayInputStream(contents));
+        }
+        return Utils.sha1(contents);
+    }
+
+    /** Return the ID contentID gives FILE once it is added. */
+    public static String contentID(File file) {
+        if (file.length() < ChunkedBlob.CHUNK_THRESHOLD) {
+            return Utils.sha1(Utils.readContents(file));
+        }
+        try {
+            return ChunkedBlob.contentID(new BufferedInputStream(new FileInputStream(file)));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Overwrite FILE with blob saved in obj folder, chunked blobs are streamed. */
+    public static void writeToFile(String blobID, File file) {
+        Serializable obj = Utils.readObject(PartialClone.object(blobID), Serializable.class);
+        if (obj instanceof ChunkedBlob) {
+            ((ChunkedBlob) obj).writeTo(file);
+        } else {
+            Utils.writeContents(file, ((Blob) obj).getContents());
+        }
+    }
 }
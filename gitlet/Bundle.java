@@ -0,0 +1,111 @@
+package gitlet;
+
+import java.io.*;
+import java.util.*;
+
+import static gitlet.Repository.*;
+
+/** Bundle is a Pack saved to a file for moving a branch without a shared
+ *  folder. The uncompressed header names the branch and its tip, lists the
+ *  prerequisite commits the receiving repository must already have, and
+ *  indexes every object in the pack, so unbundle can check a bundle and skip
+ *  one it already has without inflating the pack behind it.
+ */
+public class Bundle {
+
+    /** First bytes of every bundle. */
+    private static final int MAGIC = 0x47424e31;
+
+    /** Bytes of a raw commitID. */
+    private static final int RAW_LENGTH = Utils.UID_LENGTH / 2;
+
+    /** Write BRANCH and every object it needs except those reachable from
+     *  commits in PREREQUISITES to FILE. */
+    public static void create(File file, String branch, List<String> prerequisites) {
+        File ref = Utils.join(HEADS_DIR, branch);
+        if (!ref.isFile()) {
+            throw new GitletException("A branch with that name does not exist.");
+        }
+        String tip = Utils.readObject(ref, String.class);
+        Pack pack = Pack.plan(tip, prerequisites);
+        try {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeInt(MAGIC);
+            out.writeUTF(branch);
+            out.write(Utils.fromHex(tip));
+            out.writeInt(prerequisites.size());
+            for (String id : prerequisites) {
+                out.write(Utils.fromHex(id));
+            }
+            List<String> names = pack.getNames();
+            out.writeInt(names.size());
+            for (int i = 0; i < names.size(); ++i) {
+                out.writeBoolean(pack.isChunk(i));
+                out.write(Utils.fromHex(names.get(i)));
+            }
+            out.flush();
+            // Pack closes the file when done
+            pack.write(out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Read FILE, save its objects and set BRANCH to the bundled tip, the
+     *  bundled branch name if BRANCH is null. The branch must be new or
+     *  fast-forward to the tip, and not the current branch. */
+    public static void unbundle(File file, String branch) {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new GitletException("Not a gitlet bundle.");
+            }
+            String bundled = in.readUTF();
+            if (branch == null) {
+                branch = bundled;
+            }
+            String tip = readID(in);
+            List<String> lacking = new ArrayList<>();
+            for (int n = in.readInt(); n > 0; --n) {
+                String id = readID(in);
+                if (!Utils.join(OBJ_DIR, id).exists()) {
+                    lacking.add(id);
+                }
+            }
+            if (!lacking.isEmpty()) {
+                throw new GitletException("Repository lacks these prerequisite commits:\n"
+                        + String.join("\n", lacking));
+            }
+            File ref = Utils.join(HEADS_DIR, branch);
+            String old = ref.isFile() ? Utils.readObject(ref, String.class) : null;
+            if (branch.equals(Utils.readObject(HEAD, String.class)) && !tip.equals(old)) {
+                throw new GitletException("Cannot unbundle into the current branch.");
+            }
+            boolean complete = true;
+            for (int n = in.readInt(); n > 0; --n) {
+                File dir = in.readBoolean() ? CHUNK_DIR : OBJ_DIR;
+                complete &= Utils.join(dir, readID(in)).exists();
+            }
+            // Objects are all here already, leave the pack compressed
+            if (!complete) {
+                Pack.read(in);
+            }
+            if (old != null && !old.equals(tip)
+                    && !ReachabilityIndex.load().isAncestor(old, tip)) {
+                throw new GitletException("Bundle is not a fast-forward of branch " + branch + ".");
+            }
+            Reflog.update(branch, tip, "unbundle");
+            CommitGraph.register(tip);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Read one raw commitID from IN. */
+    private static String readID(DataInputStream in) throws IOException {
+        byte[] raw = new byte[RAW_LENGTH];
+        in.readFully(raw);
+        return Utils.toHex(raw);
+    }
+}
@@ -0,0 +1,55 @@
+package gitlet;
+
+import java.io.Serializable;
+
+import static gitlet.Repository.*;
+
+/** Running totals of chunked blobs saved in CHUNK_STATS, updated on every
+ *  store so dedup statistics never need to scan the object folder. */
+public class ChunkStats implements Serializable {
+
+    /** Number of chunked blobs stored. */
+    private long blobs = 0;
+
+    /** Bytes of all chunked files, as if saved whole. */
+    private long logicalBytes = 0;
+
+    /** Bytes of chunks actually written to CHUNK_DIR. */
+    private long storedBytes = 0;
+
+    /** Number of chunks referenced by all chunked blobs. */
+    private long chunkRefs = 0;
+
+    /** Number of distinct chunks written. */
+    private long uniqueChunks = 0;
+
+    /** Return stats in CHUNK_STATS, empty if missing. */
+    public static ChunkStats load() {
+        if (!CHUNK_STATS.exists()) {
+            return new ChunkStats();
+        }
+        return Utils.readObject(CHUNK_STATS, ChunkStats.class);
+    }
+
+    /** Add one stored blob of TOTAL bytes in NCHUNKS chunks,
+     *  NEWCHUNKS of them (NEWBYTES bytes) not stored before. */
+    static void record(long total, int nChunks, long newBytes, int newChunks) {
+        ChunkStats stats = load();
+        stats.blobs += 1;
+        stats.logicalBytes += total;
+        stats.chunkRefs += nChunks;
+        stats.storedBytes += newBytes;
+        stats.uniqueChunks += newChunks;
+        Utils.writeObject(CHUNK_STATS, stats);
+    }
+
+    /** Print dedup statistics. */
+    public void print() {
+        System.out.println("Chunked blobs: " + blobs);
+        System.out.println("Chunks: " + chunkRefs + " referenced, " + uniqueChunks + " unique");
+        System.out.println("Logical bytes: " + logicalBytes);
+        System.out.println("Stored bytes: " + storedBytes);
+        double ratio = storedBytes == 0 ? 1.0 : (double) logicalBytes / storedBytes;
+        System.out.println(String.format("Dedup ratio: %.2f", ratio));
+    }
+}
@@ -0,0 +1,282 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static gitlet.Repository.*;
+
+/** ChunkedBlob stores a large file as a list of content-defined chunks.
+ *  Chunk boundaries are picked by a FastCDC-style gear rolling hash, so an
+ *  edit only changes the chunks around it and the rest are shared with
+ *  earlier versions. Each chunk is saved once in CHUNK_DIR, named by SHA-1
+ *  of its bytes. The blobID is the same as a whole Blob of the file would get.
+ */
+public class ChunkedBlob implements Serializable {
+
+    /** Files at least this large are stored chunked. */
+    public static final long CHUNK_THRESHOLD = 1 << 20;
+
+    /** Chunk size bounds, chunks are normally close to AVG_SIZE. */
+    private static final int MIN_SIZE = 16 << 10;
+    private static final int AVG_SIZE = 64 << 10;
+    private static final int MAX_SIZE = 256 << 10;
+
+    /** Stricter mask before AVG_SIZE and looser after it (normalized chunking). */
+    private static final long MASK_S = -1L << (64 - 18);
+    private static final long MASK_L = -1L << (64 - 14);
+
+    /** Random value of each byte for the gear hash, fixed seed so boundaries
+     *  never change between runs. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random rand = new Random(0x6769746c6574L);
+        for (int i = 0; i < GEAR.length; ++i) {
+            GEAR[i] = rand.nextLong();
+        }
+    }
+
+    /** Same ID as a Blob of the whole file. */
+    private final String blobID;
+
+    /** Path of this file, a RepoPath key. */
+    private final String filePath;
+
+    /** SHA-1 of each chunk, in file order. */
+    private final String[] chunkIDs;
+
+    /** Length of each chunk, in file order. */
+    private final int[] chunkSizes;
+
+    private ChunkedBlob(String blobID, String filePath, String[] chunkIDs, int[] chunkSizes) {
+        this.blobID = blobID;
+        this.filePath = filePath;
+        this.chunkIDs = chunkIDs;
+        this.chunkSizes = chunkSizes;
+    }
+
+    /** Split FILE into chunks, save missing chunks to CHUNK_DIR and
+     *  return the ChunkedBlob. The file is read once as a stream. */
+    public static ChunkedBlob store(File file) {
+        CHUNK_DIR.mkdirs();
+        List<String> ids = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        long newBytes = 0;
+        int newChunks = 0;
+        long total = 0;
+        MessageDigest whole = Utils.newSha1Digest();
+        try (Chunker chunker = new Chunker(new BufferedInputStream(new FileInputStream(file)))) {
+            for (byte[] chunk = chunker.next(); chunk != null; chunk = chunker.next()) {
+                int cut = chunk.length;
+                whole.update(chunk);
+                String chunkID = Utils.sha1(chunk);
+                File chunkFile = Utils.join(CHUNK_DIR, chunkID);
+                if (!chunkFile.exists()) {
+                    Utils.writeContents(chunkFile, chunk);
+                    newBytes += cut;
+                    newChunks += 1;
+                }
+                ids.add(chunkID);
+                sizes.add(cut);
+                total += cut;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        String filePath = RepoPath.of(file);
+        whole.update(filePath.getBytes(StandardCharsets.UTF_8));
+        String blobID = Utils.toHex(whole.digest());
+        int[] sizeArr = sizes.stream().mapToInt(Integer::intValue).toArray();
+        ChunkStats.record(total, ids.size(), newBytes, newChunks);
+        return new ChunkedBlob(blobID, filePath, ids.toArray(new String[0]), sizeArr);
+    }
+
+    /** Return ID of the contents read from IN alone, made of the IDs of the
+     *  chunks they would be stored as. Nothing is saved. */
+    static String contentID(InputStream in) {
+        MessageDigest ids = Utils.newSha1Digest();
+        try (Chunker chunker = new Chunker(in)) {
+            for (byte[] chunk = chunker.next(); chunk != null; chunk = chunker.next()) {
+                ids.update(Utils.sha1(chunk).getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return Utils.toHex(ids.digest());
+    }
+
+    /** Return ID of the contents of this file alone, same as contentID of a
+     *  stream of them, without reading any chunk. */
+    public String contentID() {
+        MessageDigest ids = Utils.newSha1Digest();
+        for (String id : chunkIDs) {
+            ids.update(id.getBytes(StandardCharsets.UTF_8));
+        }
+        return Utils.toHex(ids.digest());
+    }
+
+    /** Cuts a stream into chunks, one call of next per chunk. */
+    private static class Chunker implements AutoCloseable {
+        private final InputStream in;
+        private final byte[] buf = new byte[MAX_SIZE];
+        private int len = 0;
+        private boolean eof = false;
+
+        Chunker(InputStream in) {
+            this.in = in;
+        }
+
+        /** Return the next chunk, null at the end of the stream. */
+        byte[] next() throws IOException {
+            // Keep buffer full so every cut sees MAX_SIZE bytes
+            while (!eof && len < MAX_SIZE) {
+                int n = in.read(buf, len, MAX_SIZE - len);
+                if (n < 0) {
+                    eof = true;
+                } else {
+                    len += n;
+                }
+            }
+            if (len == 0) {
+                return null;
+            }
+            int cut = cutPoint(buf, len);
+            byte[] chunk = Arrays.copyOf(buf, cut);
+            System.arraycopy(buf, cut, buf, 0, len - cut);
+            len -= cut;
+            return chunk;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /** Return length of the first chunk of BUF[0..LEN). */
+    static int cutPoint(byte[] buf, int len) {
+        if (len <= MIN_SIZE) {
+            return len;
+        }
+        int limit = Math.min(len, MAX_SIZE);
+        int normal = Math.min(AVG_SIZE, limit);
+        long fp = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; ++i) {
+            fp = (fp << 1) + GEAR[buf[i] & 0xff];
+            if ((fp & MASK_S) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < limit; ++i) {
+            fp = (fp << 1) + GEAR[buf[i] & 0xff];
+            if ((fp & MASK_L) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+
+    /** Return blobID as value of HashMap. */
+    public String getBlobID() {
+        return blobID;
+    }
+
+    /** Return filePath, the RepoPath key of this file. */
+    public String getFilePath() {
+        return filePath;
+    }
+
+    /** Return SHA-1 of each chunk in file order. */
+    public List<String> getChunkIDs() {
+        return List.of(chunkIDs);
+    }
+
+    /** Return total length of the file. */
+    public long size() {
+        long res = 0;
+        for (int s : chunkSizes) {
+            res += s;
+        }
+        return res;
+    }
+
+    /** Return blobID of the chunks in order followed by PATH. */
+    private String hashWithPath(String path) {
+        MessageDigest whole = Utils.newSha1Digest();
+        for (String id : chunkIDs) {
+            whole.update(Utils.readContents(Utils.join(CHUNK_DIR, id)));
+        }
+        whole.update(path.getBytes(StandardCharsets.UTF_8));
+        return Utils.toHex(whole.digest());
+    }
+
+    /** Re-hash all chunks in order and check them against blobID. */
+    public boolean hasValidID() {
+        return blobID.equals(hashWithPath(filePath));
+    }
+
+    /** Return this file saved at FILEPATH instead, chunks are shared. */
+    ChunkedBlob withPath(String path) {
+        return new ChunkedBlob(hashWithPath(path), path, chunkIDs, chunkSizes);
+    }
+
+    /** Return the whole contents, assembled from chunks. */
+    public byte[] getContents() {
+        return getContents(CHUNK_DIR);
+    }
+
+    /** Return the whole contents, assembled from chunks in CHUNKDIR. */
+    byte[] getContents(File chunkDir) {
+        byte[] res = new byte[(int) size()];
+        int off = 0;
+        for (int i = 0; i < chunkIDs.length; ++i) {
+            byte[] chunk = Utils.readContents(Utils.join(chunkDir, chunkIDs[i]));
+            System.arraycopy(chunk, 0, res, off, chunkSizes[i]);
+            off += chunkSizes[i];
+        }
+        return res;
+    }
+
+    /** Overwrite FILE with this blob. Chunks are read and written at their
+     *  offsets in parallel, so the whole file is never held in memory. */
+    public void writeTo(File file) {
+        int nThreads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            List<Future<?>> writes = new ArrayList<>();
+            long off = 0;
+            for (String id : chunkIDs) {
+                long pos = off;
+                writes.add(pool.submit(() -> {
+                    ByteBuffer buf = ByteBuffer.wrap(Utils.readContents(Utils.join(CHUNK_DIR, id)));
+                    long p = pos;
+                    while (buf.hasRemaining()) {
+                        p += out.write(buf, p);
+                    }
+                    return null;
+                }));
+                off += chunkSizes[writes.size() - 1];
+            }
+            for (Future<?> w : writes) {
+                w.get();
+            }
+        } catch (IOException | InterruptedException | ExecutionException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
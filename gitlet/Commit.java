@@ -1,9 +1,15 @@
 package gitlet;
 
 import java.util.*;
-import java.text.SimpleDateFormat;
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 
 import static gitlet.Repository.*;
 
@@ -14,56 +20,96 @@ import static gitlet.Repository.*;
  */
 
 public class Commit implements Serializable {
-    
+
+    /** Pinned so objects written by earlier builds stay readable. */
+    private static final long serialVersionUID = 3920608587629196703L;
+
     /** The initial Commit message. */
     private String message = "initial commit";
 
     /** ID of each commit, generated by SHA-1 hash. */
     private final String ID;
 
-    /** String format of current time. */
+    /** Format of dates in log, formatters are immutable so one is shared. */
+    static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy Z");
+
+    /** Commit time in millis since the epoch. */
+    private long time;
+
+    /** Offset of the committer's time zone from UTC in seconds. */
+    private int zoneOffset;
+
+    /** Formatted time of commits written before numeric times, null for
+     *  newer ones. It is kept as written since it is part of their ID. */
     private final String timeStamp;
 
+    /** Formatted time, made on first use. */
+    private transient String formatted;
+
     /** First parent commitID for logging. */
     private String firstParentID = "";
 
     /** Second parent commitID found in merge commits. */
     private String mergeParentID = null;
 
-    /** Update parent commitFiles with staging info. */
-    private Map<String, String> savedBlobs;
-
-    /** Record non-duplicate parent CommitID for BFS getLCA merging. */
-    private Set<String> parents;
+    /** Update parent commitFiles with staging info, keyed by RepoPath.
+     *  Commits written before the commit graph also hold the IDs of all
+     *  their ancestors, that field is skipped when they are read. Never
+     *  changed once the ID is hashed from it. */
+    private final Map<String, String> savedBlobs;
 
      /** Create initial commit with default message. */
     public Commit() {
-        this.savedBlobs = new TreeMap<>();
-        // Unix epoch time
-        this.timeStamp = dateToTimeStamp(new Date(0));
+        this.savedBlobs = new RepoPath.Tree(Map.of());
+        // Unix epoch time in UTC, so every repo has the same initial commit
+        this.time = 0;
+        this.zoneOffset = 0;
+        this.timeStamp = null;
         this.ID = setID();
-        // Update parents, include itself
-        parents = new HashSet<>();
-        parents.add(ID);
     }
 
     /** Create new commit with designed parentsID and message. */
     public Commit(Commit parentCommit, Commit brCommit, Staging stage, String message) {
-        this.savedBlobs = setSavedBlobs(parentCommit, stage);
+        this(parentCommit, brCommit, setSavedBlobs(parentCommit, stage), message);
+    }
+
+    /** Create new commit on PARENTCOMMIT with files SAVEDBLOBS and MESSAGE,
+     *  used when commits are replayed in memory. */
+    public Commit(Commit parentCommit, Map<String, String> savedBlobs, String message) {
+        this(parentCommit, null, savedBlobs, message);
+    }
+
+    /** Create new commit on PARENTCOMMIT, merging BRCOMMIT if not null, with
+     *  the whole tree SAVEDBLOBS and MESSAGE. */
+    public Commit(Commit parentCommit, Commit brCommit, Map<String, String> savedBlobs, String message) {
+        this.savedBlobs = new RepoPath.Tree(savedBlobs);
         this.message = message;
         this.firstParentID = parentCommit.getID();
-        this.timeStamp = dateToTimeStamp(new Date());
-        this.ID = setID();
-        this.parents = new HashSet<>(parentCommit.getParents());
-        parents.add(ID);
         if (brCommit != null) {
             this.mergeParentID = brCommit.getID();
-            parents.addAll(brCommit.getParents());
         }
+        setTimeNow();
+        this.timeStamp = null;
+        this.ID = setID();
+    }
+
+    /** Copy of OLD with files SAVEDBLOBS and parents renamed by NEWIDS, same
+     *  message and time, used when objects are migrated. */
+    Commit(Commit old, Map<String, String> savedBlobs, Map<String, String> newIDs) {
+        this.savedBlobs = new RepoPath.Tree(savedBlobs);
+        this.message = old.message;
+        this.time = old.time;
+        this.zoneOffset = old.zoneOffset;
+        this.timeStamp = old.timeStamp;
+        this.firstParentID = newIDs.getOrDefault(old.firstParentID, old.firstParentID);
+        if (old.mergeParentID != null) {
+            this.mergeParentID = newIDs.getOrDefault(old.mergeParentID, old.mergeParentID);
+        }
+        this.ID = setID();
     }
 
     /** Copy parent commit info to this commit and update with staging info. */
-    private Map<String, String> setSavedBlobs(Commit parentCommit, Staging stage) {
+    private static Map<String, String> setSavedBlobs(Commit parentCommit, Staging stage) {
         // All types of commit are copied from parent commit (include merge commit)
         Map<String, String> res = parentCommit.getSavedBlobs();
         Set<String> rmStage = stage.getRmBlobs();
@@ -75,35 +121,49 @@ public class Commit implements Serializable {
         return res;
     }
 
-    /** Update current MergeCommit with conflict info and removed info. */
-    public void updateMergeCommitFile(Map<String, String> updateMerge, Map<String, String> delMerge) {
-        assert this.mergeParentID != null;
-        this.savedBlobs.putAll(updateMerge);
-        for (String s : delMerge.keySet()) {
-            this.savedBlobs.remove(s);
-        }
+    /** Set time to now in the local time zone. */
+    private void setTimeNow() {
+        this.time = System.currentTimeMillis();
+        this.zoneOffset = ZoneId.systemDefault().getRules()
+                .getOffset(Instant.ofEpochMilli(time)).getTotalSeconds();
     }
 
-    /** Formatter helper function to return String format of timeStamp. */
-    private String dateToTimeStamp(Date date) {
-        SimpleDateFormat dateFormat = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z");
-        return dateFormat.format(date);
+    /** Fill in numeric time of a commit written before numeric times. */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (timeStamp != null) {
+            OffsetDateTime t = OffsetDateTime.parse(timeStamp, TIME_FORMAT);
+            this.time = t.toInstant().toEpochMilli();
+            this.zoneOffset = t.getOffset().getTotalSeconds();
+        }
     }
 
     /** SHA-1 hash to generate ID for this commit. */
     private String setID() {
-        return Utils.sha1(savedBlobs.toString(),
-                firstParentID, message, timeStamp);
+        return Utils.sha1(savedBlobs.toString(), firstParentID, message,
+                timeStamp != null ? timeStamp : time + " " + zoneOffset);
+    }
+
+    /** Re-hash this commit and check it against its ID. */
+    public boolean hasValidID() {
+        return ID.equals(setID());
     }
 
-    /** Save current commit to objects folder and save current commitID in branch head. */
-    public void saveCommit(String branchName) {
+    /** Save current commit to objects folder and save current commitID in
+     *  branch head, the move is logged as ACTION. */
+    public void saveCommit(String branchName, String action) {
         // Save in obj folder
         File commitFile = Utils.join(OBJ_DIR, this.ID);
         Utils.writeObject(commitFile, this);
         // Save commitID to branch file
-        File branchFile = Utils.join(HEADS_DIR, branchName);
-        Utils.writeObject(branchFile, this.ID);
+        Reflog.update(branchName, this.ID, action);
+        // Keep compact commit graph in sync for ancestry queries
+        CommitGraph.register(this);
+    }
+
+    /** Save current commit to objects folder only, branch head is left alone. */
+    public void saveObject() {
+        Utils.writeObject(Utils.join(OBJ_DIR, this.ID), this);
     }
 
     /** Check addBlob HashMap to see map exists. */
@@ -111,11 +171,6 @@ public class Commit implements Serializable {
         return savedBlobs.containsKey(filePath);
     }
 
-    /** Untrack file in current Commit, file is untracked after this operation. */
-    public void untrackFileInCommit(String filePath) {
-        this.savedBlobs.remove(filePath);
-    }
-    
     /** Get value of <FilePath, ShA1-Hash> pair, */
     public String getCommitFileBlobID(String filePath) {
         if (this.isFileInCommit(filePath)) {
@@ -125,11 +180,6 @@ public class Commit implements Serializable {
         return "";
     }
 
-    /** Get HashSet of parents' CommitID and check in BFS merging. */
-    public Set<String> getParents() {
-        return new HashSet<>(parents);
-    }
-
     /** Return private ID. */
     public String getID() {
         return ID;
@@ -144,9 +194,26 @@ public class Commit implements Serializable {
     public String getMergeParentID() {
         return mergeParentID;
     }
-    /** Return private timeStamp. */
+    /** Return commit time in millis since the epoch. */
+    public long getTime() {
+        return time;
+    }
+
+    /** Return offset of the commit time zone from UTC in seconds. */
+    public int getZoneOffset() {
+        return zoneOffset;
+    }
+
+    /** Return commit time formatted in its own time zone. */
     public String getTimeStamp() {
-        return timeStamp;
+        if (timeStamp != null) {
+            return timeStamp;
+        }
+        if (formatted == null) {
+            formatted = TIME_FORMAT.format(Instant.ofEpochMilli(time)
+                    .atOffset(ZoneOffset.ofTotalSeconds(zoneOffset)));
+        }
+        return formatted;
     }
 
     /** Return private commit message. */
@@ -0,0 +1,360 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.*;
+
+import static gitlet.Repository.*;
+
+/** CommitGraph is a compact copy of the history DAG saved in COMMIT_GRAPH.
+ *  Each commit gets a position, parents always have smaller positions than
+ *  their children, so walks never need to deserialize a Commit object.
+ *  Each position also has a Bloom filter of paths changed from its first
+ *  parent, so path-limited walks skip most commits without reading them.
+ *  Commit times are kept with a table of positions sorted by time, so
+ *  commits made in a time range are found by binary search.
+ */
+public class CommitGraph implements Serializable {
+
+    /** Pinned so graphs written before Bloom filters stay readable. */
+    private static final long serialVersionUID = -187013575610002230L;
+
+    /** Bloom filter bits per changed path and number of hashes. */
+    private static final int BLOOM_BITS_PER_PATH = 10;
+    private static final int BLOOM_HASHES = 7;
+
+    /** Commits changing more paths get a filter matching every path. */
+    private static final int BLOOM_MAX_PATHS = 512;
+
+    /** Filter of a commit changing too many paths. */
+    private static final long[] BLOOM_ALL = new long[] {-1L};
+
+    /** Marker for a missing parent. */
+    public static final int NONE = -1;
+
+    /** CommitID of each position. */
+    private final ArrayList<String> ids = new ArrayList<>();
+
+    /** Position of first parent, NONE for initial commit. */
+    private int[] firstParent = new int[16];
+
+    /** Position of merge parent, NONE for normal commits. */
+    private int[] mergeParent = new int[16];
+
+    /** Generation number, 1 + max generation of parents. */
+    private int[] generation = new int[16];
+
+    /** Changed-path Bloom filter of each position, null if not computed. */
+    private long[][] blooms = new long[16][];
+
+    /** Commit time of each position in millis. */
+    private long[] times = new long[16];
+
+    /** Positions sorted by time, ties by position. */
+    private int[] byTime = new int[16];
+
+    /** CommitID -> position, rebuilt after reading. */
+    private transient Map<String, Integer> positions;
+
+    /** Return graph in COMMIT_GRAPH, built from branch heads if missing or stale. */
+    public static CommitGraph load() {
+        CommitGraph graph = read();
+        if (graph == null) {
+            graph = new CommitGraph();
+            // Bitmaps refer to positions of the old graph
+            COMMIT_BITMAPS.delete();
+        }
+        int before = graph.size();
+        for (String id : Remote.headIDs(HEADS_DIR)) {
+            graph.addReachable(id);
+        }
+        if (graph.size() != before) {
+            graph.save();
+            ReachabilityIndex.update(graph, before);
+        }
+        return graph;
+    }
+
+    /** Add commit to graph saved in COMMIT_GRAPH. */
+    public static void register(Commit commit) {
+        register(commit.getID());
+    }
+
+    /** Add commit with COMMITID and its missing ancestors to graph saved in
+     *  COMMIT_GRAPH, all of them must be in OBJ_DIR. */
+    public static void register(String commitID) {
+        // Old repo, build graph from branch heads first
+        CommitGraph graph = read();
+        if (graph == null) {
+            graph = load();
+        }
+        int before = graph.size();
+        graph.addReachable(commitID);
+        if (graph.size() != before) {
+            graph.save();
+            ReachabilityIndex.update(graph, before);
+        }
+    }
+
+    /** Return graph in COMMIT_GRAPH, null if missing or unreadable. It only
+     *  caches what commit objects hold, so a bad one is just rebuilt. */
+    private static CommitGraph read() {
+        CommitGraph graph = read(COMMIT_GRAPH);
+        if (graph == null) {
+            COMMIT_GRAPH.delete();
+        }
+        return graph;
+    }
+
+    /** Return graph saved in FILE, null if missing or unreadable. */
+    static CommitGraph read(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            CommitGraph graph = Utils.readObject(file, CommitGraph.class);
+            // Graph written before commit times, positions may all change
+            return graph.times == null ? null : graph;
+        } catch (IllegalArgumentException excp) {
+            return null;
+        }
+    }
+
+    /** Save this graph to COMMIT_GRAPH. */
+    public void save() {
+        Utils.writeObject(COMMIT_GRAPH, this);
+    }
+
+    /** Add commit with given ID and all its missing ancestors. */
+    private void addReachable(String commitID) {
+        // Iterative post order, parents get their positions first
+        Deque<String> stack = new ArrayDeque<>();
+        Map<String, Commit> loaded = new HashMap<>();
+        stack.push(commitID);
+        while (!stack.isEmpty()) {
+            String id = stack.peek();
+            if (position(id) != NONE) {
+                stack.pop();
+                continue;
+            }
+            Commit c = loaded.computeIfAbsent(id,
+                    k -> Utils.readObject(Utils.join(OBJ_DIR, k), Commit.class));
+            // Parents of a shallow commit were never copied
+            boolean cut = PartialClone.isShallow(id);
+            String p1 = cut ? "" : c.getFirstParentID();
+            String p2 = cut ? null : c.getMergeParentID();
+            if (!p1.equals("") && position(p1) == NONE) {
+                stack.push(p1);
+            } else if (p2 != null && position(p2) == NONE) {
+                stack.push(p2);
+            } else {
+                stack.pop();
+                append(id, p1.equals("") ? NONE : position(p1),
+                        p2 == null ? NONE : position(p2), c.getTime());
+                Map<String, String> parentBlobs = p1.equals("") ? Map.of()
+                        : Utils.readObject(Utils.join(OBJ_DIR, p1), Commit.class).getSavedBlobs();
+                blooms[position(id)] = bloom(changedPaths(parentBlobs, c.getSavedBlobs()));
+                loaded.remove(id);
+            }
+        }
+    }
+
+    /** Append one commit whose parents are already in the graph. */
+    void append(String id, int p1, int p2, long time) {
+        int pos = ids.size();
+        if (pos == firstParent.length) {
+            int len = pos * 2;
+            firstParent = Arrays.copyOf(firstParent, len);
+            mergeParent = Arrays.copyOf(mergeParent, len);
+            generation = Arrays.copyOf(generation, len);
+            times = Arrays.copyOf(times, len);
+            byTime = Arrays.copyOf(byTime, len);
+        }
+        if (blooms == null) {
+            // Graph written before Bloom filters, old positions stay unknown
+            blooms = new long[firstParent.length][];
+        } else if (blooms.length < firstParent.length) {
+            blooms = Arrays.copyOf(blooms, firstParent.length);
+        }
+        ids.add(id);
+        firstParent[pos] = p1;
+        mergeParent[pos] = p2;
+        int gen = 0;
+        if (p1 != NONE) {
+            gen = generation[p1];
+        }
+        if (p2 != NONE) {
+            gen = Math.max(gen, generation[p2]);
+        }
+        generation[pos] = gen + 1;
+        times[pos] = time;
+        // New commits are mostly the newest, so this rarely moves anything
+        int at = firstAfter(time, pos);
+        System.arraycopy(byTime, at, byTime, at + 1, pos - at);
+        byTime[at] = pos;
+        positionMap().put(id, pos);
+    }
+
+    /** Return index in the first N of byTime of the first position with
+     *  time after TIME, N if there is none. */
+    private int firstAfter(long time, int n) {
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (times[byTime[mid]] <= time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Return CommitID -> position map, built on first use after reading. */
+    private Map<String, Integer> positionMap() {
+        if (positions == null) {
+            positions = new HashMap<>();
+            for (int i = 0; i < ids.size(); ++i) {
+                positions.put(ids.get(i), i);
+            }
+        }
+        return positions;
+    }
+
+    /** Return position of commitID, NONE if not in graph. */
+    public int position(String commitID) {
+        return positionMap().getOrDefault(commitID, NONE);
+    }
+
+    /** Return commitID at position. */
+    public String id(int pos) {
+        return ids.get(pos);
+    }
+
+    /** Return number of commits in graph. */
+    public int size() {
+        return ids.size();
+    }
+
+    /** Return position of first parent, NONE for initial commit. */
+    public int firstParent(int pos) {
+        return firstParent[pos];
+    }
+
+    /** Return position of merge parent, NONE if not a merge commit. */
+    public int mergeParent(int pos) {
+        return mergeParent[pos];
+    }
+
+    /** Return false if the commit at POS surely did not change FILEPATH
+     *  from its first parent, true if it might have. */
+    public boolean mayChange(int pos, String filePath) {
+        long[] bits = blooms == null ? null : blooms[pos];
+        if (bits == null) {
+            return true;
+        }
+        int n = bits.length * 64;
+        long h1 = hash1(filePath);
+        long h2 = hash2(filePath);
+        for (int i = 0; i < BLOOM_HASHES; ++i) {
+            int bit = (int) Math.floorMod(h1 + i * h2, (long) n);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return paths whose blobID differs between maps A and B. */
+    static Set<String> changedPaths(Map<String, String> a, Map<String, String> b) {
+        Set<String> res = new HashSet<>();
+        for (Map.Entry<String, String> e : b.entrySet()) {
+            if (!e.getValue().equals(a.get(e.getKey()))) {
+                res.add(e.getKey());
+            }
+        }
+        for (String path : a.keySet()) {
+            if (!b.containsKey(path)) {
+                res.add(path);
+            }
+        }
+        return res;
+    }
+
+    /** Return Bloom filter of PATHS. */
+    private static long[] bloom(Set<String> paths) {
+        if (paths.size() > BLOOM_MAX_PATHS) {
+            return BLOOM_ALL;
+        }
+        int words = Math.max(1, (paths.size() * BLOOM_BITS_PER_PATH + 63) / 64);
+        long[] bits = new long[words];
+        int n = words * 64;
+        for (String path : paths) {
+            long h1 = hash1(path);
+            long h2 = hash2(path);
+            for (int i = 0; i < BLOOM_HASHES; ++i) {
+                int bit = (int) Math.floorMod(h1 + i * h2, (long) n);
+                bits[bit >>> 6] |= 1L << bit;
+            }
+        }
+        return bits;
+    }
+
+    /** Two independent hashes of S for double hashing. */
+    private static long hash1(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); ++i) {
+            h = (h ^ s.charAt(i)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static long hash2(String s) {
+        long h = s.hashCode() * 0x9e3779b97f4a7c15L;
+        return (h ^ (h >>> 29)) | 1;
+    }
+
+    /** Return commit time of POS in millis. */
+    public long time(int pos) {
+        return times[pos];
+    }
+
+    /** Return positions of commits made at or after FROM and before TO
+     *  millis, oldest first. */
+    public int[] between(long from, long to) {
+        int lo = firstAfter(from - 1, size());
+        int hi = Math.max(lo, firstAfter(to - 1, size()));
+        return Arrays.copyOfRange(byTime, lo, hi);
+    }
+
+    /** Return marks of positions reachable from commits IDS, which must
+     *  be in the graph. */
+    public boolean[] reachable(Collection<String> ids) {
+        boolean[] res = new boolean[size()];
+        int[] stack = new int[size()];
+        int top = 0;
+        for (String id : ids) {
+            int pos = position(id);
+            if (!res[pos]) {
+                res[pos] = true;
+                stack[top++] = pos;
+            }
+        }
+        while (top > 0) {
+            int pos = stack[--top];
+            for (int p : new int[] {firstParent[pos], mergeParent[pos]}) {
+                if (p != NONE && !res[p]) {
+                    res[p] = true;
+                    stack[top++] = p;
+                }
+            }
+        }
+        return res;
+    }
+
+    /** Return generation number, initial commit is 1. */
+    public int generation(int pos) {
+        return generation[pos];
+    }
+}
@@ -0,0 +1,152 @@
+package gitlet;
+
+import java.util.*;
+
+/** Diff matches lines of two versions of a file with Myers' O((N+M)D)
+ *  algorithm in its linear space form, after trimming common lines at
+ *  both ends. Each step finds the middle snake of a shortest edit script
+ *  and splits the problem there, so memory stays O(N+M). */
+public class Diff {
+
+    /** Return, for each line of B, index of the line of A it is kept from,
+     *  or -1 if it was inserted. */
+    public static int[] match(String[] a, String[] b) {
+        int[] res = new int[b.length];
+        Arrays.fill(res, -1);
+        int start = 0;
+        while (start < a.length && start < b.length && a[start].equals(b[start])) {
+            res[start] = start;
+            start += 1;
+        }
+        int endA = a.length;
+        int endB = b.length;
+        while (endA > start && endB > start && a[endA - 1].equals(b[endB - 1])) {
+            endA -= 1;
+            endB -= 1;
+            res[endB] = endA;
+        }
+        if (endA > start && endB > start) {
+            new Diff(a, b, start, endA, start, endB).run(res);
+        }
+        return res;
+    }
+
+    /** Lines of both versions as numbers, equal lines get equal numbers. */
+    private final int[] a;
+    private final int[] b;
+
+    /** Furthest x on each diagonal, forward and backward, shared by all
+     *  subproblems. */
+    private final int[] vf;
+    private final int[] vb;
+
+    private final int aLo;
+    private final int aHi;
+    private final int bLo;
+    private final int bHi;
+
+    private Diff(String[] a, String[] b, int aLo, int aHi, int bLo, int bHi) {
+        Map<String, Integer> ids = new HashMap<>();
+        this.a = new int[a.length];
+        this.b = new int[b.length];
+        for (int i = aLo; i < aHi; ++i) {
+            this.a[i] = ids.computeIfAbsent(a[i], k -> ids.size());
+        }
+        for (int i = bLo; i < bHi; ++i) {
+            this.b[i] = ids.computeIfAbsent(b[i], k -> ids.size());
+        }
+        int max = aHi - aLo + bHi - bLo;
+        vf = new int[2 * max + 3];
+        vb = new int[2 * max + 3];
+        this.aLo = aLo;
+        this.aHi = aHi;
+        this.bLo = bLo;
+        this.bHi = bHi;
+    }
+
+    /** Match all lines into RES, subproblems wait on a stack instead of
+     *  the call stack. */
+    private void run(int[] res) {
+        Deque<int[]> todo = new ArrayDeque<>();
+        todo.push(new int[] {aLo, aHi, bLo, bHi});
+        while (!todo.isEmpty()) {
+            int[] p = todo.pop();
+            int x0 = p[0];
+            int x1 = p[1];
+            int y0 = p[2];
+            int y1 = p[3];
+            if (x0 == x1 || y0 == y1) {
+                continue;
+            }
+            int[] snake = middleSnake(x0, x1, y0, y1);
+            if (snake[4] <= 1) {
+                // One insert or delete at most, lines match in order around it
+                int i = x0;
+                int j = y0;
+                while (i < x1 && j < y1) {
+                    if (a[i] == b[j]) {
+                        res[j++] = i++;
+                    } else if (x1 - x0 > y1 - y0) {
+                        i += 1;
+                    } else {
+                        j += 1;
+                    }
+                }
+                continue;
+            }
+            for (int i = snake[0], j = snake[1]; i < snake[2]; ++i, ++j) {
+                res[j] = i;
+            }
+            todo.push(new int[] {x0, snake[0], y0, snake[1]});
+            todo.push(new int[] {snake[2], x1, snake[3], y1});
+        }
+    }
+
+    /** Return start x, y, end x, y of the middle snake of A[x0..x1) against
+     *  B[y0..y1), and the length of the shortest edit script. */
+    private int[] middleSnake(int x0, int x1, int y0, int y1) {
+        int n = x1 - x0;
+        int m = y1 - y0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int off = n + m + 1;
+        vf[off + 1] = 0;
+        vb[off + 1] = 0;
+        for (int d = 0; d <= (n + m + 1) / 2; ++d) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && vf[off + k - 1] < vf[off + k + 1])
+                        ? vf[off + k + 1] : vf[off + k - 1] + 1;
+                int y = x - k;
+                int sx = x;
+                int sy = y;
+                while (x < n && y < m && a[x0 + x] == b[y0 + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                vf[off + k] = x;
+                int kb = delta - k;
+                if (odd && kb >= -(d - 1) && kb <= d - 1 && x + vb[off + kb] >= n) {
+                    return new int[] {x0 + sx, y0 + sy, x0 + x, y0 + y, 2 * d - 1};
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                // Backward x counts lines from the end
+                int x = k == -d || (k != d && vb[off + k - 1] < vb[off + k + 1])
+                        ? vb[off + k + 1] : vb[off + k - 1] + 1;
+                int y = x - k;
+                int sx = x;
+                int sy = y;
+                while (x < n && y < m && a[x1 - x - 1] == b[y1 - y - 1]) {
+                    x += 1;
+                    y += 1;
+                }
+                vb[off + k] = x;
+                int kf = delta - k;
+                if (!odd && kf >= -d && kf <= d && x + vf[off + kf] >= n) {
+                    return new int[] {x1 - x, y1 - y, x1 - sx, y1 - sy, 2 * d};
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+}
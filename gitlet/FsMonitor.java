@@ -0,0 +1,430 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static gitlet.Repository.*;
+
+/** FsMonitor keeps track of which files in CWD changed, so status, add and
+ *  checkout only look at the dirty ones.
+ *
+ *  A long-lived daemon (gitlet fsmonitor run) watches CWD and every directory
+ *  below it with a WatchService and appends every changed path to
+ *  FSMONITOR_DIR/journal. It holds a
+ *  lock on FSMONITOR_DIR/lock while running. A client remembers the journal
+ *  offset it has seen (the token) together with the file list and blob IDs
+ *  it computed, and next time only rechecks names written after its token.
+ *  Without a running daemon every call falls back to a full scan.
+ */
+public class FsMonitor {
+
+    /** Files of the daemon and of the client cache. */
+    private static final File LOCK = Utils.join(FSMONITOR_DIR, "lock");
+    private static final File JOURNAL = Utils.join(FSMONITOR_DIR, "journal");
+    private static final File INSTANCE = Utils.join(FSMONITOR_DIR, "instance");
+    private static final File STOP = Utils.join(FSMONITOR_DIR, "stop");
+    private static final File CACHE = Utils.join(FSMONITOR_DIR, "cache");
+    private static final String COOKIE_PREFIX = "cookie-";
+
+    /** Journal line meaning every file must be rechecked. */
+    private static final String ALL_DIRTY = "*";
+
+    /** Journal line prefix written when a cookie file is seen. */
+    private static final String COOKIE_LINE = "!";
+
+    /** How long a client waits for the daemon to catch up. */
+    private static final long SYNC_TIMEOUT_MILLIS = 2000;
+
+    /** Start a new journal once the current one is this large. */
+    private static final long MAX_JOURNAL = 4 << 20;
+
+    /* DAEMON */
+
+    /** Run the daemon in this process until gitlet fsmonitor stop. */
+    public static void runDaemon() {
+        FSMONITOR_DIR.mkdirs();
+        try (FileChannel lockChannel = FileChannel.open(LOCK.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = lockChannel.tryLock()) {
+            if (lock == null) {
+                System.out.println("fsmonitor is already running.");
+                return;
+            }
+            STOP.delete();
+            watch();
+        } catch (IOException | InterruptedException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Watch CWD, its subdirectories and FSMONITOR_DIR (for cookies) until
+     *  STOP appears. */
+    private static void watch() throws IOException, InterruptedException {
+        WatchService ws = FileSystems.getDefault().newWatchService();
+        // Watched directory -> its path relative to CWD, "" for CWD itself
+        Map<WatchKey, String> dirs = new HashMap<>();
+        register(ws, CWD, "", dirs);
+        FSMONITOR_DIR.toPath().register(ws, StandardWatchEventKinds.ENTRY_CREATE);
+        FileOutputStream journal = newJournal();
+        while (!STOP.exists()) {
+            WatchKey key = ws.poll(500, TimeUnit.MILLISECONDS);
+            if (key == null) {
+                continue;
+            }
+            StringBuilder lines = new StringBuilder();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    lines.append(ALL_DIRTY).append('\n');
+                    continue;
+                }
+                String name = event.context().toString();
+                String prefix = dirs.get(key);
+                if (prefix != null) {
+                    if (prefix.isEmpty() && name.equals(".gitlet")) {
+                        continue;
+                    }
+                    String path = prefix + name;
+                    File f = Utils.join(CWD, path);
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && f.isDirectory()) {
+                        // Files made before this are found when the client rescans PATH
+                        register(ws, f, path + "/", dirs);
+                    }
+                    lines.append(path).append('\n');
+                } else if (name.startsWith(COOKIE_PREFIX)) {
+                    // Every event before the cookie is in the journal now
+                    lines.append(COOKIE_LINE).append(name).append('\n');
+                }
+            }
+            if (!key.reset()) {
+                dirs.remove(key);
+            }
+            journal.write(lines.toString().getBytes(StandardCharsets.UTF_8));
+            journal.flush();
+            if (JOURNAL.length() > MAX_JOURNAL) {
+                journal.close();
+                journal = newJournal();
+            }
+        }
+        journal.close();
+        ws.close();
+        INSTANCE.delete();
+        STOP.delete();
+    }
+
+    /** Watch DIR, whose path relative to CWD is PREFIX, and every directory
+     *  below it, recording their keys in DIRS. */
+    private static void register(WatchService ws, File dir, String prefix,
+                                 Map<WatchKey, String> dirs) throws IOException {
+        WatchKey key = dir.toPath().register(ws, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        dirs.put(key, prefix);
+        File[] subdirs = dir.listFiles(File::isDirectory);
+        if (subdirs == null) {
+            return;
+        }
+        for (File sub : subdirs) {
+            if (!(prefix.isEmpty() && sub.getName().equals(".gitlet"))) {
+                register(ws, sub, prefix + sub.getName() + "/", dirs);
+            }
+        }
+    }
+
+    /** Start an empty journal under a new instance ID, which makes every
+     *  client token invalid. */
+    private static FileOutputStream newJournal() throws IOException {
+        FileOutputStream journal = new FileOutputStream(JOURNAL, false);
+        Utils.writeContents(INSTANCE, UUID.randomUUID().toString());
+        return journal;
+    }
+
+    /** Spawn the daemon in a background JVM and wait until it runs. */
+    public static void startDaemon() {
+        if (isRunning()) {
+            System.out.println("fsmonitor is already running.");
+            return;
+        }
+        String java = ProcessHandle.current().info().command().orElse("java");
+        ProcessBuilder pb = new ProcessBuilder(java, "-cp",
+                System.getProperty("java.class.path"), "gitlet.Main", "fsmonitor", "run");
+        pb.directory(CWD);
+        pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+        try {
+            pb.start();
+            long deadline = System.currentTimeMillis() + SYNC_TIMEOUT_MILLIS * 5;
+            while (!(isRunning() && INSTANCE.exists())) {
+                if (System.currentTimeMillis() > deadline) {
+                    System.out.println("fsmonitor did not start.");
+                    return;
+                }
+                Thread.sleep(20);
+            }
+        } catch (IOException | InterruptedException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Ask the daemon to exit and wait until it has. */
+    public static void stopDaemon() {
+        if (!isRunning()) {
+            System.out.println("fsmonitor is not running.");
+            return;
+        }
+        Utils.writeContents(STOP, "");
+        try {
+            while (isRunning()) {
+                Thread.sleep(20);
+            }
+        } catch (InterruptedException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return true if a daemon holds LOCK. */
+    public static boolean isRunning() {
+        if (!LOCK.exists()) {
+            return false;
+        }
+        try (FileChannel ch = FileChannel.open(LOCK.toPath(), StandardOpenOption.WRITE)) {
+            FileLock lock = ch.tryLock();
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (OverlappingFileLockException excp) {
+            // Lock is held by this very process
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /* CLIENT */
+
+    /** What a client knew at its last token. */
+    private static class Cache implements Serializable {
+        /** Daemon instance the offset belongs to. */
+        private String instance;
+        /** Journal offset already applied. */
+        private long offset;
+        /** Paths of plain files in CWD and below, relative to CWD. */
+        private TreeSet<String> files = new TreeSet<>();
+        /** FileName -> blobID of its current contents. */
+        private HashMap<String, String> hashes = new HashMap<>();
+    }
+
+    /** Snapshot of CWD for one command. */
+    public static class Snapshot {
+        private final Cache cache;
+        /** False when no daemon runs, nothing is remembered then. */
+        private final boolean persistent;
+        private boolean changed = false;
+
+        private Snapshot(Cache cache, boolean persistent) {
+            this.cache = cache;
+            this.persistent = persistent;
+        }
+
+        /** Return paths of plain files in CWD and below, relative to CWD, in
+         *  lexicographic order. */
+        public List<String> fileNames() {
+            return new ArrayList<>(cache.files);
+        }
+
+        /** Return true if plain file FILENAME is in CWD. */
+        public boolean exists(String fileName) {
+            return cache.files.contains(fileName);
+        }
+
+        /** Return blobID of file FILENAME in CWD. */
+        public String blobID(String fileName) {
+            String id = cache.hashes.get(fileName);
+            if (id != null) {
+                Trace.count("fsmonitor.cache.hit");
+                return id;
+            }
+            id = Utils.sha1File(Utils.join(CWD, fileName), fileName);
+            if (persistent) {
+                cache.hashes.put(fileName, id);
+                changed = true;
+            }
+            return id;
+        }
+
+        /** Forget what is known about FILENAME, after writing it. If it is
+         *  or was a directory, everything below it is looked at again. */
+        public void invalidate(String fileName) {
+            cache.hashes.remove(fileName);
+            File f = Utils.join(CWD, fileName);
+            if (f.isFile()) {
+                cache.files.add(fileName);
+            } else {
+                cache.files.remove(fileName);
+            }
+            String dirPrefix = fileName + "/";
+            SortedSet<String> below = cache.files.subSet(dirPrefix, dirPrefix + Character.MAX_VALUE);
+            if (f.isDirectory() || !below.isEmpty()) {
+                cache.hashes.keySet().removeAll(below);
+                below.clear();
+                scan(f, dirPrefix, cache.files);
+            }
+            changed = true;
+        }
+
+        /** Remember this snapshot for the next command. */
+        public void save() {
+            if (persistent && changed) {
+                Utils.writeObject(CACHE, cache);
+            }
+        }
+    }
+
+    /** Forget blobIDs remembered by earlier commands. */
+    static void dropCache() {
+        CACHE.delete();
+    }
+
+    /** Return snapshot of CWD, reusing everything the daemon reports clean. */
+    public static Snapshot snapshot() {
+        if (!isRunning() || !INSTANCE.exists()) {
+            return new Snapshot(fullScan(), false);
+        }
+        String instance = Utils.readContentsAsString(INSTANCE);
+        // Token is taken before looking at files, later changes show up next time
+        long offset = sync();
+        if (offset < 0) {
+            return new Snapshot(fullScan(), false);
+        }
+        Cache cache = CACHE.exists() ? Utils.readObject(CACHE, Cache.class) : null;
+        if (cache == null || !instance.equals(cache.instance) || cache.offset > offset) {
+            Cache fresh = fullScan();
+            fresh.instance = instance;
+            fresh.offset = offset;
+            Snapshot snap = new Snapshot(fresh, true);
+            snap.changed = true;
+            return snap;
+        }
+        Set<String> dirty = readJournal(cache.offset, offset);
+        if (dirty.contains(ALL_DIRTY)) {
+            Cache fresh = fullScan();
+            fresh.instance = instance;
+            fresh.offset = offset;
+            Snapshot snap = new Snapshot(fresh, true);
+            snap.changed = true;
+            return snap;
+        }
+        Trace.count("fsmonitor.dirty", dirty.size());
+        Snapshot snap = new Snapshot(cache, true);
+        for (String name : dirty) {
+            snap.invalidate(name);
+        }
+        snap.changed = snap.changed || cache.offset != offset;
+        cache.offset = offset;
+        return snap;
+    }
+
+    /** Drop a cookie and wait for the daemon to journal it. Return journal
+     *  offset just after the cookie line, or -1 if the daemon is too slow. */
+    private static long sync() {
+        String cookie = COOKIE_PREFIX + ProcessHandle.current().pid() + "-" + System.nanoTime();
+        File cookieFile = Utils.join(FSMONITOR_DIR, cookie);
+        Utils.writeContents(cookieFile, "");
+        byte[] marker = (COOKIE_LINE + cookie + "\n").getBytes(StandardCharsets.UTF_8);
+        long deadline = System.currentTimeMillis() + SYNC_TIMEOUT_MILLIS;
+        try {
+            while (System.currentTimeMillis() < deadline) {
+                long pos = findInJournal(marker);
+                if (pos >= 0) {
+                    return pos;
+                }
+                Thread.sleep(2);
+            }
+            return -1;
+        } catch (InterruptedException excp) {
+            return -1;
+        } finally {
+            cookieFile.delete();
+        }
+    }
+
+    /** Return offset after the last occurrence of MARKER in JOURNAL, or -1. */
+    private static long findInJournal(byte[] marker) {
+        try (RandomAccessFile raf = new RandomAccessFile(JOURNAL, "r")) {
+            long len = raf.length();
+            // Cookie is among the last lines, look at the tail only
+            long from = Math.max(0, len - 64 * 1024);
+            byte[] tail = new byte[(int) (len - from)];
+            raf.seek(from);
+            raf.readFully(tail);
+            outer:
+            for (int i = tail.length - marker.length; i >= 0; --i) {
+                for (int j = 0; j < marker.length; ++j) {
+                    if (tail[i + j] != marker[j]) {
+                        continue outer;
+                    }
+                }
+                return from + i + marker.length;
+            }
+            return -1;
+        } catch (IOException excp) {
+            return -1;
+        }
+    }
+
+    /** Return names journaled in [FROM, TO). */
+    private static Set<String> readJournal(long from, long to) {
+        Set<String> res = new HashSet<>();
+        try (RandomAccessFile raf = new RandomAccessFile(JOURNAL, "r")) {
+            byte[] buf = new byte[(int) (to - from)];
+            raf.seek(from);
+            raf.readFully(buf);
+            for (String line : new String(buf, StandardCharsets.UTF_8).split("\n")) {
+                if (!line.isEmpty() && !line.startsWith(COOKIE_LINE)) {
+                    res.add(line);
+                }
+            }
+        } catch (IOException excp) {
+            res.add(ALL_DIRTY);
+        }
+        return res;
+    }
+
+    /** Return cache filled with the current file list and no hashes. */
+    private static Cache fullScan() {
+        Cache cache = new Cache();
+        scan(CWD, "", cache.files);
+        return cache;
+    }
+
+    /** Add to FILES the paths of plain files in DIR and below, each prefixed
+     *  with PREFIX, the path of DIR relative to CWD. .gitlet is skipped. */
+    private static void scan(File dir, String prefix, Set<String> files) {
+        List<String> names = Utils.plainFilenamesIn(dir);
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            files.add(prefix + name);
+        }
+        File[] subdirs = dir.listFiles(File::isDirectory);
+        if (subdirs == null) {
+            return;
+        }
+        for (File sub : subdirs) {
+            if (!(prefix.isEmpty() && sub.getName().equals(".gitlet"))) {
+                scan(sub, prefix + sub.getName() + "/", files);
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static gitlet.Repository.*;
+
+/** Fsck re-hashes every object in OBJ_DIR and checks the commit graph.
+ *  Objects are streamed from the directory and verified by a pool of
+ *  workers, only object IDs are kept in memory for the link checks.
+ */
+public class Fsck {
+
+    /** Max number of objects queued for the workers at any time. */
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+
+    /** CommitID -> parents (first and merge) of every readable commit. */
+    private final Map<String, List<String>> commitParents = new ConcurrentHashMap<>();
+
+    /** BlobID -> commitID of one commit that refers to this blob. */
+    private final Map<String, String> blobRefs = new ConcurrentHashMap<>();
+
+    /** BlobIDs of every readable blob. */
+    private final Set<String> blobs = ConcurrentHashMap.newKeySet();
+
+    /** Problems found while verifying single objects. */
+    private final Set<String> problems = new ConcurrentSkipListSet<>();
+
+    /** Number of object files visited. */
+    private int checked = 0;
+
+    /** Check all objects, print one line per problem found. */
+    public void run() {
+        scanObjects();
+        checkLinks();
+        for (String s : problems) {
+            System.out.println(s);
+        }
+        System.out.println("Checked " + checked + " objects, "
+                + problems.size() + " problems found.");
+    }
+
+    /** Stream through OBJ_DIR and verify each object in parallel. */
+    private void scanObjects() {
+        int nThreads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        // Bound the queue so a huge object folder is never listed into memory
+        Semaphore inFlight = new Semaphore(nThreads * IN_FLIGHT_PER_THREAD);
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(OBJ_DIR.toPath())) {
+            for (Path p : dir) {
+                String name = p.getFileName().toString();
+                if (!isObjectName(name)) {
+                    continue;
+                }
+                checked += 1;
+                inFlight.acquire();
+                pool.execute(() -> {
+                    try {
+                        verifyObject(p.toFile(), name);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        } catch (IOException | InterruptedException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Object files are named by a full SHA-1 UID. */
+    static boolean isObjectName(String name) {
+        if (name.length() != Utils.UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); ++i) {
+            if (Character.digit(name.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Deserialize one object, re-hash it and record its links. */
+    private void verifyObject(File file, String name) {
+        Serializable obj;
+        try {
+            obj = Utils.readObject(file, Serializable.class);
+        } catch (IllegalArgumentException excp) {
+            problems.add("corrupt object " + name);
+            return;
+        }
+        if (obj instanceof Commit) {
+            Commit commit = (Commit) obj;
+            if (!commit.getID().equals(name) || !commit.hasValidID()) {
+                problems.add("hash mismatch commit " + name);
+            }
+            List<String> parents = new ArrayList<>(2);
+            // Parents were left out by a shallow clone
+            boolean cut = PartialClone.isShallow(name);
+            if (!cut && !commit.getFirstParentID().equals("")) {
+                parents.add(commit.getFirstParentID());
+            }
+            if (!cut && commit.getMergeParentID() != null) {
+                parents.add(commit.getMergeParentID());
+            }
+            commitParents.put(name, parents);
+            for (String blobID : commit.getSavedBlobs().values()) {
+                blobRefs.putIfAbsent(blobID, name);
+            }
+        } else if (obj instanceof Blob) {
+            Blob blob = (Blob) obj;
+            if (!blob.getBlobID().equals(name) || !blob.hasValidID()) {
+                problems.add("hash mismatch blob " + name);
+            }
+            blobs.add(name);
+        } else if (obj instanceof ChunkedBlob) {
+            verifyChunkedBlob((ChunkedBlob) obj, name);
+            blobs.add(name);
+        } else {
+            problems.add("unknown object type " + name);
+        }
+    }
+
+    /** Check chunks of a chunked blob exist, then re-hash them in order. */
+    private void verifyChunkedBlob(ChunkedBlob blob, String name) {
+        boolean complete = true;
+        for (String chunkID : blob.getChunkIDs()) {
+            if (!Utils.join(CHUNK_DIR, chunkID).isFile()) {
+                problems.add("missing chunk " + chunkID + " (in blob " + name + ")");
+                complete = false;
+            }
+        }
+        if (complete && (!blob.getBlobID().equals(name) || !blob.hasValidID())) {
+            problems.add("hash mismatch blob " + name);
+        }
+    }
+
+    /** Check parent links, blob targets and reachability from branches. */
+    private void checkLinks() {
+        for (Map.Entry<String, List<String>> e : commitParents.entrySet()) {
+            for (String pid : e.getValue()) {
+                if (!commitParents.containsKey(pid)) {
+                    problems.add("missing commit " + pid + " (parent of " + e.getKey() + ")");
+                }
+            }
+        }
+        // Blobs of a blobless clone are fetched when needed
+        boolean promised = PartialClone.hasPromisor();
+        for (Map.Entry<String, String> e : blobRefs.entrySet()) {
+            if (!blobs.contains(e.getKey()) && !promised) {
+                problems.add("missing blob " + e.getKey() + " (in commit " + e.getValue() + ")");
+            }
+        }
+        // Walk from every branch head, commits not visited are dangling
+        Set<String> reachable = new HashSet<>();
+        Deque<String> stack = new ArrayDeque<>();
+        List<String> branches = new ArrayList<>(Utils.plainFilenamesIn(HEADS_DIR));
+        // Fetched branches are REMOTE/BRANCH
+        File[] remoteDirs = HEADS_DIR.listFiles(File::isDirectory);
+        for (File dir : remoteDirs == null ? new File[0] : remoteDirs) {
+            for (String br : Utils.plainFilenamesIn(dir)) {
+                branches.add(dir.getName() + "/" + br);
+            }
+        }
+        for (String br : branches) {
+            String id = Utils.readObject(Utils.join(HEADS_DIR, br), String.class);
+            if (!commitParents.containsKey(id)) {
+                problems.add("invalid branch " + br + " (points to " + id + ")");
+                continue;
+            }
+            stack.push(id);
+        }
+        // Stashed changes keep their commits alive
+        for (String id : Stash.read()) {
+            if (!commitParents.containsKey(id)) {
+                problems.add("invalid stash (points to " + id + ")");
+                continue;
+            }
+            stack.push(id);
+        }
+        while (!stack.isEmpty()) {
+            String id = stack.pop();
+            if (!reachable.add(id)) {
+                continue;
+            }
+            for (String pid : commitParents.getOrDefault(id, List.of())) {
+                stack.push(pid);
+            }
+        }
+        for (String id : commitParents.keySet()) {
+            if (!reachable.contains(id)) {
+                problems.add("dangling commit " + id);
+            }
+        }
+        // Blobs in staging area are referenced but not yet committed
+        Staging stage = Staging.load();
+        Set<String> staged = new HashSet<>(stage.getAddBlobs().values());
+        for (String id : blobs) {
+            if (!blobRefs.containsKey(id) && !staged.contains(id)) {
+                problems.add("dangling blob " + id);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.*;
+
+import static gitlet.Repository.*;
+
+/** Gc drops reflog records older than a cutoff, then removes objects that
+ *  no branch, stash, reflog record or staged file leads to. Only objects
+ *  last written before the cutoff are removed, so objects of a command
+ *  running now are safe. Caches built on the commit set are made again.
+ */
+public class Gc {
+
+    /** Commits reached from the roots. */
+    private final Set<String> commits = new HashSet<>();
+
+    /** Blobs reached from the roots. */
+    private final Set<String> blobs = new HashSet<>();
+
+    /** Expire reflogs and prune objects older than CUTOFF millis. */
+    public static void run(long cutoff) {
+        long expired = Reflog.expire(cutoff);
+        Gc gc = new Gc();
+        gc.mark();
+        int removed = gc.sweep(cutoff);
+        if (removed > 0) {
+            COMMIT_GRAPH.delete();
+            COMMIT_BITMAPS.delete();
+            COMMIT_ID_INDEX.delete();
+            File[] blamed = BLAME_DIR.listFiles();
+            for (File f : blamed == null ? new File[0] : blamed) {
+                f.delete();
+            }
+            prefixCommitID = new TrieIndex();
+            CommitGraph.load();
+            indexCommitIDs(gc.commits);
+        }
+        System.out.println("Expired " + expired + " reflog entries, removed " + removed + " objects.");
+    }
+
+    /** Walk from every root, record commits and blobs reached. */
+    private void mark() {
+        Deque<String> stack = new ArrayDeque<>(Remote.headIDs(HEADS_DIR));
+        stack.addAll(Reflog.commitIDs());
+        for (String id : Stash.read()) {
+            stack.push(id);
+        }
+        blobs.addAll(Staging.load().getAddBlobs().values());
+        while (!stack.isEmpty()) {
+            String id = stack.pop();
+            File f = Utils.join(OBJ_DIR, id);
+            if (commits.contains(id) || !f.isFile()) {
+                continue;
+            }
+            commits.add(id);
+            Commit c = Utils.readObject(f, Commit.class);
+            blobs.addAll(c.getSavedBlobs().values());
+            // Parents were left out by a shallow clone
+            if (PartialClone.isShallow(id)) {
+                continue;
+            }
+            if (!c.getFirstParentID().equals("")) {
+                stack.push(c.getFirstParentID());
+            }
+            if (c.getMergeParentID() != null) {
+                stack.push(c.getMergeParentID());
+            }
+        }
+        Trace.count("gc.commits", commits.size());
+        Trace.count("gc.blobs", blobs.size());
+    }
+
+    /** Remove unreached objects and chunks older than CUTOFF, return how many. */
+    private int sweep(long cutoff) {
+        int removed = 0;
+        for (String name : Utils.plainFilenamesIn(OBJ_DIR)) {
+            File f = Utils.join(OBJ_DIR, name);
+            if (Fsck.isObjectName(name) && !commits.contains(name) && !blobs.contains(name)
+                    && f.lastModified() < cutoff && f.delete()) {
+                removed += 1;
+            }
+        }
+        List<String> chunks = Utils.plainFilenamesIn(CHUNK_DIR);
+        if (chunks == null || chunks.isEmpty()) {
+            return removed;
+        }
+        // Chunks are shared by versions, keep every one a kept blob lists
+        Set<String> used = new HashSet<>();
+        for (String blobID : blobs) {
+            File f = Utils.join(OBJ_DIR, blobID);
+            if (f.isFile()) {
+                Serializable obj = Utils.readObject(f, Serializable.class);
+                if (obj instanceof ChunkedBlob) {
+                    used.addAll(((ChunkedBlob) obj).getChunkIDs());
+                }
+            }
+        }
+        for (String name : chunks) {
+            File f = Utils.join(CHUNK_DIR, name);
+            if (Fsck.isObjectName(name) && !used.contains(name)
+                    && f.lastModified() < cutoff && f.delete()) {
+                removed += 1;
+            }
+        }
+        return removed;
+    }
+}
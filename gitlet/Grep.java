@@ -0,0 +1,114 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static gitlet.Repository.*;
+
+/** Grep searches files of many commits for a pattern. Each blob is scanned
+ *  once however many commits share it, by a pool of workers that scan while
+ *  later commits are still read. Commits are printed in order, at most
+ *  READ_AHEAD of them are held waiting for their scans. Binary and very
+ *  large blobs are skipped.
+ */
+public class Grep {
+
+    /** Blobs larger than this are not scanned. */
+    private static final long MAX_SCAN_BYTES = 8 << 20;
+
+    /** A blob with a NUL byte in its first BINARY_PROBE bytes is binary. */
+    private static final int BINARY_PROBE = 8000;
+
+    /** Commits read past the one printed next. */
+    private static final int READ_AHEAD = 64;
+
+    /** Print commit:file:line:text for every line matching PATTERN in
+     *  files of COMMITS, which are read one at a time. */
+    public static void grep(Pattern pattern, Iterable<Commit> commits) {
+        Trace.Region region = Trace.region("grep.scan");
+        // BlobID -> line:text hits of that blob
+        Map<String, Future<List<String>>> scans = new HashMap<>();
+        Deque<Commit> pending = new ArrayDeque<>();
+        int files = 0;
+        int nThreads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        try {
+            for (Commit c : commits) {
+                for (String blobID : c.getSavedBlobs().values()) {
+                    scans.computeIfAbsent(blobID, id -> pool.submit(() -> scan(pattern, id)));
+                }
+                files += c.getSavedBlobs().size();
+                pending.add(c);
+                if (pending.size() > READ_AHEAD) {
+                    print(pending.poll(), scans);
+                }
+            }
+            while (!pending.isEmpty()) {
+                print(pending.poll(), scans);
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+        region.close();
+        Trace.count("grep.files", files);
+        Trace.count("grep.blobs", scans.size());
+    }
+
+    /** Print hits of files of commit C once SCANS of their blobs are done. */
+    private static void print(Commit c, Map<String, Future<List<String>>> scans)
+            throws InterruptedException, ExecutionException {
+        for (Map.Entry<String, String> e : c.getSavedBlobs().entrySet()) {
+            List<String> res = scans.get(e.getValue()).get();
+            if (res.isEmpty()) {
+                continue;
+            }
+            String prefix = c.getID().substring(0, 8) + ":" + e.getKey() + ":";
+            for (String hit : res) {
+                System.out.println(prefix + hit);
+            }
+        }
+    }
+
+    /** Return line:text of each line of blob BLOBID matching PATTERN. */
+    private static List<String> scan(Pattern pattern, String blobID) {
+        File file = PartialClone.object(blobID);
+        // A whole Blob is its contents and a short header, too large ones are never read
+        if (file.length() > MAX_SCAN_BYTES) {
+            Trace.count("grep.skipped");
+            return List.of();
+        }
+        Serializable obj = Utils.readObject(file, Serializable.class);
+        byte[] contents;
+        if (obj instanceof ChunkedBlob) {
+            if (((ChunkedBlob) obj).size() > MAX_SCAN_BYTES) {
+                Trace.count("grep.skipped");
+                return List.of();
+            }
+            contents = ((ChunkedBlob) obj).getContents();
+        } else {
+            contents = ((Blob) obj).getContents();
+        }
+        for (int i = 0; i < Math.min(contents.length, BINARY_PROBE); ++i) {
+            if (contents[i] == 0) {
+                Trace.count("grep.skipped");
+                return List.of();
+            }
+        }
+        List<String> res = new ArrayList<>();
+        String[] lines = new String(contents, StandardCharsets.UTF_8).split("\n");
+        Matcher m = pattern.matcher("");
+        for (int i = 0; i < lines.length; ++i) {
+            if (m.reset(lines[i]).find()) {
+                res.add((i + 1) + ":" + lines[i]);
+            }
+        }
+        return res;
+    }
+}
@@ -1,5 +1,7 @@
 package gitlet;
 
+import java.util.Arrays;
+
 /** Driver class for MyTinyGit, a subset of the Git version-control system.
  *
  *  @author ChrisWang13
@@ -11,38 +13,183 @@ public class Main {
      */
 
     public static void main(String[] args) {
+        args = Trace.init(args);
         int cmdLen = args.length;
         if (cmdLen == 0) {
             System.out.println("Please enter a command.");
             System.exit(0);
         }
         String firstArg = args[0];
-        switch (firstArg) {
-            case "init" -> Repository.init();
-            case "add" -> Repository.add(args[1]);
-            case "commit" -> {
-                if (args[1].isEmpty()) {
-                    System.out.println("Please enter a commit message.");
-                    System.exit(0);
-                }
-                Repository.commit(args[1]);
+        Trace.Region cmdRegion = Trace.region(firstArg);
+        try {
+            if (!firstArg.equals("migrate")) {
+                Repository.checkFormat();
             }
-            case "log" -> Repository.log();
-            case "rm" -> Repository.rm(args[1]);
-            case "status" -> Repository.status();
-            case "branch" -> Repository.branch(args[1]);
-            case "checkout"-> {
-                if (args.length == 3 && args[1].equals("--")) {
-                    Repository.checkoutFileName(args[2]);
-                } else if (args.length == 4 && args[2].equals("--")) {
-                    Repository.checkoutCommitID(args[1],args[3]);
-                } else if (args.length == 2) {
-                    Repository.checkoutBranch(args[1]);
-                } else {
-                    System.out.println("Incorrect operands.");
+            switch (firstArg) {
+                case "init" -> Repository.init();
+                case "add" -> Repository.add(args[1]);
+                case "commit" -> {
+                    if (args[1].isEmpty()) {
+                        throw new GitletException("Please enter a commit message.");
+                    }
+                    Repository.commit(args[1]);
+                }
+                case "log" -> {
+                    if (args.length == 3 && args[1].equals("--")) {
+                        Repository.logPath(args[2]);
+                    } else if (args.length == 1) {
+                        Repository.log();
+                    } else {
+                        String since = null;
+                        String until = null;
+                        boolean all = false;
+                        for (int i = 1; i < args.length; ++i) {
+                            if (args[i].startsWith("--since=")) {
+                                since = args[i].substring("--since=".length());
+                            } else if (args[i].startsWith("--until=")) {
+                                until = args[i].substring("--until=".length());
+                            } else if (args[i].equals("--all")) {
+                                all = true;
+                            } else {
+                                throw new GitletException("Incorrect operands.");
+                            }
+                        }
+                        Repository.log(since, until, all);
+                    }
+                }
+                case "rm" -> Repository.rm(args[1]);
+                case "status" -> Repository.status(args.length > 1 && args[1].equals("--renames"));
+                case "branch" -> {
+                    if (args.length == 3 && args[1].equals("--contains")) {
+                        Repository.branchContains(args[2]);
+                    } else {
+                        Repository.branch(args[1]);
+                    }
+                }
+                case "checkout"-> {
+                    if (args.length == 3 && args[1].equals("--")) {
+                        Repository.checkoutFileName(args[2]);
+                    } else if (args.length == 4 && args[2].equals("--")) {
+                        Repository.checkoutCommitID(args[1],args[3]);
+                    } else if (args.length == 2) {
+                        Repository.checkoutBranch(args[1]);
+                    } else {
+                        throw new GitletException("Incorrect operands.");
+                    }
+                }
+                case "merge" -> Repository.merge(args[1]);
+                case "fsck" -> Repository.fsck();
+                case "migrate" -> Repository.migrate(Arrays.asList(args).subList(1, args.length));
+                case "dedup-stats" -> Repository.dedupStats();
+                case "sparse-checkout" -> {
+                    if (args.length < 2) {
+                        throw new GitletException("Incorrect operands.");
+                    }
+                    Repository.sparseCheckout(args[1], Arrays.asList(args).subList(2, args.length));
+                }
+                case "reflog" -> Repository.reflog(args.length > 1 ? args[1] : null);
+                case "gc" -> Repository.gc(args.length > 1 ? args[1] : null);
+                case "bisect" -> {
+                    if (args.length < 2) {
+                        throw new GitletException("Incorrect operands.");
+                    }
+                    Repository.bisect(args[1], Arrays.asList(args).subList(2, args.length));
+                }
+                case "archive" -> {
+                    String format = null;
+                    String output = null;
+                    String rev = null;
+                    for (int i = 1; i < args.length; ++i) {
+                        if (args[i].startsWith("--format=")) {
+                            format = args[i].substring(9);
+                        } else if (args[i].equals("-o") && i + 1 < args.length) {
+                            output = args[++i];
+                        } else if (rev == null) {
+                            rev = args[i];
+                        } else {
+                            throw new GitletException("Incorrect operands.");
+                        }
+                    }
+                    if (rev == null) {
+                        throw new GitletException("Incorrect operands.");
+                    }
+                    Repository.archive(format, output, rev);
+                }
+                case "stash" -> {
+                    if (args.length > 3) {
+                        throw new GitletException("Incorrect operands.");
+                    }
+                    Repository.stash(args.length > 1 ? args[1] : "push",
+                            args.length > 2 ? args[2] : null);
                 }
+                case "blame" -> Repository.blame(args[1]);
+                case "diff" -> {
+                    if (args.length == 2 || args.length == 3) {
+                        Repository.diff(args[1], args.length == 3 ? args[2] : null);
+                    } else {
+                        throw new GitletException("Incorrect operands.");
+                    }
+                }
+                case "cherry-pick" -> Repository.cherryPick(args[1]);
+                case "rebase" -> Repository.rebase(args[1]);
+                case "grep" -> Repository.grep(args[1],
+                        Arrays.asList(args).subList(2, args.length));
+                case "add-remote" -> Repository.addRemote(args[1], args[2]);
+                case "rm-remote" -> Repository.rmRemote(args[1]);
+                case "clone" -> {
+                    int depth = 0;
+                    boolean blobless = false;
+                    for (int i = 2; i < args.length; ++i) {
+                        if (args[i].startsWith("--depth=")) {
+                            depth = parseDepth(args[i].substring(8));
+                        } else if (args[i].equals("--blobless")) {
+                            blobless = true;
+                        } else {
+                            throw new GitletException("Incorrect operands.");
+                        }
+                    }
+                    Repository.clone(args[1], depth, blobless);
+                }
+                case "fetch" -> Repository.fetch(args[1], args[2]);
+                case "push" -> Repository.push(args[1], args[2]);
+                case "pull" -> Repository.pull(args[1], args[2]);
+                case "bundle" -> {
+                    if (args.length >= 4 && args[1].equals("create")) {
+                        Repository.bundleCreate(args[2], args[3],
+                                Arrays.asList(args).subList(4, args.length));
+                    } else if ((args.length == 3 || args.length == 4) && args[1].equals("unbundle")) {
+                        Repository.bundleUnbundle(args[2], args.length == 4 ? args[3] : null);
+                    } else {
+                        throw new GitletException("Incorrect operands.");
+                    }
+                }
+                case "upload-pack" -> Repository.uploadPack(args[1]);
+                case "receive-pack" -> Repository.receivePack(args[1], args[2]);
+                case "fsmonitor" -> Repository.fsmonitor(args.length > 1 ? args[1] : "status");
+            }
+        } catch (GitletException excp) {
+            // Errors are reported on stdout and the command ends normally, but
+            // plumbing stdout is a pack read by another gitlet, which needs
+            // the message on stderr and the exit status to know it failed
+            boolean plumbing = firstArg.equals("upload-pack") || firstArg.equals("receive-pack");
+            if (excp.getMessage() != null) {
+                (plumbing ? System.err : System.out).println(excp.getMessage());
+            }
+            System.exit(plumbing ? 1 : 0);
+        }
+        cmdRegion.close();
+    }
+
+    /** Return depth given by --depth=VALUE, a positive number. */
+    private static int parseDepth(String value) {
+        try {
+            int depth = Integer.parseInt(value);
+            if (depth > 0) {
+                return depth;
             }
-            case "merge" -> Repository.merge(args[1]);
+        } catch (NumberFormatException excp) {
+            // Reported below like any other bad operand
         }
+        throw new GitletException("Incorrect operands.");
     }
 }
@@ -0,0 +1,89 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static gitlet.Repository.*;
+
+/** MergeTree is a three-way merge of savedBlobs maps done in memory. Only
+ *  paths changed between BASE and THEIRS are looked at, the rest of OURS is
+ *  kept, so replaying a commit costs the size of its changes plus one map
+ *  copy and never touches the working tree.
+ */
+public class MergeTree {
+
+    /** FilePath -> blobID after the merge. */
+    private final TreeMap<String, String> result;
+
+    /** FilePaths whose result is a conflict blob. */
+    private final Set<String> conflicts = new TreeSet<>();
+
+    private MergeTree(Map<String, String> ours) {
+        this.result = new TreeMap<>(ours);
+    }
+
+    /** Return merge of changes from BASE to THEIRS into OURS. Conflict blobs
+     *  are saved to OBJ_DIR only if SAVECONFLICTS. */
+    public static MergeTree merge(Map<String, String> base, Map<String, String> ours,
+                                  Map<String, String> theirs, boolean saveConflicts) {
+        MergeTree tree = new MergeTree(ours);
+        Set<String> changed = new TreeSet<>();
+        for (Map.Entry<String, String> e : theirs.entrySet()) {
+            if (!e.getValue().equals(base.get(e.getKey()))) {
+                changed.add(e.getKey());
+            }
+        }
+        for (String filePath : base.keySet()) {
+            if (!theirs.containsKey(filePath)) {
+                changed.add(filePath);
+            }
+        }
+        for (String filePath : changed) {
+            String baseID = base.getOrDefault(filePath, "");
+            String ourID = ours.getOrDefault(filePath, "");
+            String theirID = theirs.getOrDefault(filePath, "");
+            if (ourID.equals(theirID)) {
+                continue;
+            }
+            if (ourID.equals(baseID)) {
+                // Only their side changed this path
+                tree.put(filePath, theirID);
+                continue;
+            }
+            tree.conflicts.add(filePath);
+            if (saveConflicts) {
+                tree.put(filePath, saveConflict(filePath, ourID, theirID));
+            }
+        }
+        return tree;
+    }
+
+    private void put(String filePath, String blobID) {
+        if (blobID.equals("")) {
+            result.remove(filePath);
+        } else {
+            result.put(filePath, blobID);
+        }
+    }
+
+    /** Save blob of FILEPATH with conflict markers around OURID and THEIRID
+     *  contents, return its blobID. */
+    private static String saveConflict(String filePath, String ourID, String theirID) {
+        String ours = ourID.equals("") ? "" : new String(Blob.readContents(ourID), StandardCharsets.UTF_8);
+        String theirs = theirID.equals("") ? "" : new String(Blob.readContents(theirID), StandardCharsets.UTF_8);
+        String contents = "<<<<<<< HEAD" + "\n" + ours + "=======" + "\n" + theirs + ">>>>>>>" + "\n";
+        Blob blob = new Blob(filePath, contents.getBytes(StandardCharsets.UTF_8));
+        Utils.writeObject(Utils.join(OBJ_DIR, blob.getBlobID()), blob);
+        return blob.getBlobID();
+    }
+
+    /** Return filePath -> blobID after the merge. */
+    public TreeMap<String, String> getResult() {
+        return result;
+    }
+
+    /** Return filePaths both sides changed differently. */
+    public Set<String> getConflicts() {
+        return conflicts;
+    }
+}
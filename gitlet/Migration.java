@@ -0,0 +1,222 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.*;
+
+import static gitlet.Repository.*;
+
+/** Migration rewrites a repository made when commits, blobs and the staging
+ *  area were keyed by absolute paths (CWD + "/" + fileName) to RepoPath keys.
+ *  Both kinds of ID hash the keys, so every blob and commit is written again
+ *  under a new ID. Refs, the staging area and the shallow list are moved to
+ *  the new IDs, then the old objects and every cache built on them are
+ *  removed. Nothing is written until all paths are known to be convertible.
+ */
+public class Migration {
+
+    /** Folders paths may be relative to, longest first. */
+    private final List<String> roots = new ArrayList<>();
+
+    /** Old objectID -> new objectID, for every object that changed. */
+    private final Map<String, String> newIDs = new HashMap<>();
+
+    /** Every commit in OBJ_DIR by old ID. */
+    private final Map<String, Commit> commits = new HashMap<>();
+
+    /** IDs of every blob in OBJ_DIR. */
+    private final Set<String> blobs = new LinkedHashSet<>();
+
+    /** Convert this repository, old roots are CWD, folders of remotes and of
+     *  the promisor, and ROOTS given by the user. */
+    public static void run(List<String> roots) {
+        if (REPO_FORMAT.exists()) {
+            System.out.println("Repository already uses relative paths.");
+            return;
+        }
+        Migration m = new Migration();
+        m.addRoot(CWD);
+        for (String root : roots) {
+            m.addRoot(new File(root).isAbsolute() ? new File(root) : Utils.join(CWD, root));
+        }
+        for (File dir : Remote.gitletDirs()) {
+            m.addRoot(dir.getAbsoluteFile().getParentFile());
+        }
+        if (PartialClone.hasPromisor()) {
+            m.addRoot(new File(Utils.readContentsAsString(PROMISOR)).getParentFile().getParentFile());
+        }
+        m.roots.sort(Comparator.comparingInt(String::length).reversed());
+        m.scan();
+        m.rewrite();
+    }
+
+    private void addRoot(File dir) {
+        roots.add(dir.toPath().toAbsolutePath().normalize().toString());
+    }
+
+    /** Return RepoPath key of old key PATH, null if under no known root. */
+    private String relative(String path) {
+        if (!new File(path).isAbsolute()) {
+            return RepoPath.of(path);
+        }
+        for (String root : roots) {
+            if (path.startsWith(root + "/") || path.startsWith(root + File.separator)) {
+                return RepoPath.of(path.substring(root.length() + 1));
+            }
+        }
+        return null;
+    }
+
+    /** Read every object, exit before writing if a path has no known root. */
+    private void scan() {
+        Set<String> paths = new TreeSet<>();
+        for (String name : Utils.plainFilenamesIn(OBJ_DIR)) {
+            if (name.length() != Utils.UID_LENGTH) {
+                continue;
+            }
+            Serializable obj = Utils.readObject(Utils.join(OBJ_DIR, name), Serializable.class);
+            if (obj instanceof Commit) {
+                Commit c = (Commit) obj;
+                commits.put(name, c);
+                paths.addAll(c.getSavedBlobs().keySet());
+            } else if (obj instanceof Blob) {
+                blobs.add(name);
+                paths.add(((Blob) obj).getFilePath());
+            } else if (obj instanceof ChunkedBlob) {
+                blobs.add(name);
+                paths.add(((ChunkedBlob) obj).getFilePath());
+            }
+        }
+        Staging stage = Staging.load();
+        paths.addAll(stage.getAddBlobs().keySet());
+        paths.addAll(stage.getRmBlobs());
+        for (String path : paths) {
+            if (relative(path) == null) {
+                throw new GitletException("Cannot find the repository folder of " + path
+                        + ", give it to migrate.");
+            }
+        }
+    }
+
+    /** Write new objects, move refs and remove old objects and caches. */
+    private void rewrite() {
+        // Blobs of a blobless clone are needed here to hash them again
+        for (Commit c : commits.values()) {
+            for (String blobID : c.getSavedBlobs().values()) {
+                if (!blobs.contains(blobID) && PartialClone.object(blobID).exists()) {
+                    blobs.add(blobID);
+                }
+            }
+        }
+        for (String blobID : blobs) {
+            rewriteBlob(blobID);
+        }
+        Trace.count("migrate.blobs", blobs.size());
+        rewriteCommits();
+        Trace.count("migrate.commits", commits.size());
+        Staging.load().rekey(this::relative, newIDs);
+        for (File ref : refs(HEADS_DIR)) {
+            String id = Utils.readObject(ref, String.class);
+            Utils.writeObject(ref, newIDs.getOrDefault(id, id));
+        }
+        if (SHALLOW.exists()) {
+            StringBuilder sb = new StringBuilder();
+            for (String id : Utils.readContentsAsString(SHALLOW).split("\n")) {
+                if (!id.isEmpty()) {
+                    sb.append(newIDs.getOrDefault(id, id)).append('\n');
+                }
+            }
+            Utils.writeContents(SHALLOW, sb.toString());
+        }
+        Utils.writeContents(REPO_FORMAT, FORMAT_VERSION + "\n");
+        for (String old : newIDs.keySet()) {
+            Utils.join(OBJ_DIR, old).delete();
+        }
+        COMMIT_GRAPH.delete();
+        COMMIT_BITMAPS.delete();
+        COMMIT_ID_INDEX.delete();
+        File[] blamed = BLAME_DIR.listFiles();
+        for (File f : blamed == null ? new File[0] : blamed) {
+            f.delete();
+        }
+        FsMonitor.dropCache();
+        CommitGraph.load();
+        List<String> ids = new ArrayList<>();
+        for (String id : commits.keySet()) {
+            ids.add(newIDs.getOrDefault(id, id));
+        }
+        indexCommitIDs(ids);
+    }
+
+    /** Save blob BLOBID again under its RepoPath key. */
+    private void rewriteBlob(String blobID) {
+        Serializable obj = Utils.readObject(Utils.join(OBJ_DIR, blobID), Serializable.class);
+        String id;
+        Serializable res;
+        if (obj instanceof ChunkedBlob) {
+            ChunkedBlob blob = ((ChunkedBlob) obj).withPath(relative(((ChunkedBlob) obj).getFilePath()));
+            id = blob.getBlobID();
+            res = blob;
+        } else {
+            Blob blob = (Blob) obj;
+            blob = new Blob(relative(blob.getFilePath()), blob.getContents());
+            id = blob.getBlobID();
+            res = blob;
+        }
+        if (!id.equals(blobID)) {
+            Utils.writeObject(Utils.join(OBJ_DIR, id), res);
+            newIDs.put(blobID, id);
+        }
+    }
+
+    /** Save commits again, parents before children so their new IDs are known. */
+    private void rewriteCommits() {
+        Set<String> done = new HashSet<>();
+        Deque<String> stack = new ArrayDeque<>();
+        for (String start : commits.keySet()) {
+            stack.push(start);
+            while (!stack.isEmpty()) {
+                String id = stack.peek();
+                Commit c = commits.get(id);
+                if (c == null || done.contains(id)) {
+                    // Already saved, or a parent left out by a shallow clone
+                    stack.pop();
+                    continue;
+                }
+                String p1 = c.getFirstParentID();
+                String p2 = c.getMergeParentID();
+                if (!p1.equals("") && commits.containsKey(p1) && !done.contains(p1)) {
+                    stack.push(p1);
+                } else if (p2 != null && commits.containsKey(p2) && !done.contains(p2)) {
+                    stack.push(p2);
+                } else {
+                    stack.pop();
+                    done.add(id);
+                    Map<String, String> tree = new TreeMap<>();
+                    for (Map.Entry<String, String> e : c.getSavedBlobs().entrySet()) {
+                        tree.put(relative(e.getKey()), newIDs.getOrDefault(e.getValue(), e.getValue()));
+                    }
+                    Commit res = new Commit(c, tree, newIDs);
+                    if (!res.getID().equals(id)) {
+                        res.saveObject();
+                        newIDs.put(id, res.getID());
+                    }
+                }
+            }
+        }
+    }
+
+    /** Return every ref file in HEADSDIR, fetched ones included. */
+    private static List<File> refs(File headsDir) {
+        List<File> res = new ArrayList<>();
+        File[] entries = headsDir.listFiles();
+        for (File f : entries == null ? new File[0] : entries) {
+            if (f.isDirectory()) {
+                res.addAll(refs(f));
+            } else {
+                res.add(f);
+            }
+        }
+        return res;
+    }
+}
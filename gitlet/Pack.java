@@ -0,0 +1,285 @@
+package gitlet;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static gitlet.Repository.*;
+
+/** Pack streams the commits, blobs and chunks one repository misses as a
+ *  single compressed stream. The sender is told which commits the receiver
+ *  HAS, marks all their ancestors as common with the reachability bitmaps and
+ *  only walks commits between the WANT tip and that common history. Blobs
+ *  already in the trees of the boundary commits are not sent either.
+ */
+public class Pack {
+
+    /** First bytes of every pack. */
+    private static final int MAGIC = 0x47504b31;
+
+    /** Record types, END closes the pack. */
+    private static final byte END = 0;
+    private static final byte COMMIT = 1;
+    private static final byte BLOB = 2;
+    private static final byte CHUNK = 3;
+
+    /** Buffer size of the compressed streams. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Tip commitID of this pack. */
+    private final String tip;
+
+    /** Type and name of each record, in the order they are written. */
+    private final List<Byte> types = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+
+    private Pack(String tip) {
+        this.tip = tip;
+    }
+
+    /** Return pack of objects reachable from commit WANT but not from any
+     *  commit in HAVES. Commits come parents first, each followed by its
+     *  new blobs and their chunks. */
+    public static Pack plan(String want, Collection<String> haves) {
+        CommitGraph graph = CommitGraph.load();
+        ReachabilityIndex reach = ReachabilityIndex.load(graph);
+        Trace.Region region = Trace.region("pack.negotiate");
+        RoaringBitmap common = new RoaringBitmap();
+        for (String have : haves) {
+            int pos = graph.position(have);
+            if (pos != CommitGraph.NONE && !common.contains(pos)) {
+                common.or(reach.reach(pos));
+            }
+        }
+        // Walk from WANT down to the common history
+        List<Integer> missing = new ArrayList<>();
+        Set<Integer> boundary = new HashSet<>();
+        Set<Integer> seen = new HashSet<>();
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(graph.position(want));
+        while (!stack.isEmpty()) {
+            int cur = stack.pop();
+            if (cur == CommitGraph.NONE || !seen.add(cur)) {
+                continue;
+            }
+            if (common.contains(cur)) {
+                boundary.add(cur);
+                continue;
+            }
+            missing.add(cur);
+            stack.push(graph.firstParent(cur));
+            stack.push(graph.mergeParent(cur));
+        }
+        // Parents have smaller positions than children
+        Collections.sort(missing);
+        Set<String> sentBlobs = new HashSet<>();
+        for (int pos : boundary) {
+            sentBlobs.addAll(readCommit(graph.id(pos)).getSavedBlobs().values());
+        }
+        Pack pack = new Pack(want);
+        Set<String> sentChunks = new HashSet<>();
+        for (int pos : missing) {
+            String id = graph.id(pos);
+            pack.add(COMMIT, id);
+            for (String blobID : readCommit(id).getSavedBlobs().values()) {
+                if (!sentBlobs.add(blobID)) {
+                    continue;
+                }
+                pack.add(BLOB, blobID);
+                Serializable obj = Utils.readObject(PartialClone.object(blobID), Serializable.class);
+                if (!(obj instanceof ChunkedBlob)) {
+                    continue;
+                }
+                for (String chunkID : ((ChunkedBlob) obj).getChunkIDs()) {
+                    if (sentChunks.add(chunkID)) {
+                        pack.add(CHUNK, chunkID);
+                    }
+                }
+            }
+        }
+        region.close();
+        return pack;
+    }
+
+    /** Write pack of objects reachable from commit WANT but not from any
+     *  commit in HAVES to OUT. Return number of objects written. */
+    public static int write(OutputStream out, String want, Collection<String> haves) {
+        return plan(want, haves).write(out);
+    }
+
+    private void add(byte type, String name) {
+        types.add(type);
+        names.add(name);
+    }
+
+    /** Return tip commitID of this pack. */
+    public String getTip() {
+        return tip;
+    }
+
+    /** Return names of all objects in this pack, in pack order. */
+    public List<String> getNames() {
+        return names;
+    }
+
+    /** Return true if the object at INDEX is a chunk, not in OBJ_DIR. */
+    public boolean isChunk(int index) {
+        return types.get(index) == CHUNK;
+    }
+
+    /** Write this pack to OUT and close it. Return number of objects written. */
+    public int write(OutputStream out) {
+        Trace.Region region = Trace.region("pack.write");
+        // Closing the pack closes OUT, which tells a reading process it is done
+        try (DataOutputStream data = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(out, BUFFER_SIZE), BUFFER_SIZE))) {
+            data.writeInt(MAGIC);
+            data.writeUTF(tip);
+            for (int i = 0; i < names.size(); ++i) {
+                File dir = types.get(i) == CHUNK ? CHUNK_DIR : OBJ_DIR;
+                writeRecord(data, types.get(i), names.get(i), Utils.join(dir, names.get(i)));
+            }
+            data.writeByte(END);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        region.close();
+        Trace.count("pack.objects", names.size());
+        return names.size();
+    }
+
+    /** Write one record of TYPE named by NAME with contents of FILE. */
+    private static void writeRecord(DataOutputStream data, byte type, String name,
+                                    File file) throws IOException {
+        byte[] bytes = Utils.readContents(file);
+        data.writeByte(type);
+        data.write(Utils.fromHex(name));
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    /** Read a pack from IN, save objects missing in OBJ_DIR and CHUNK_DIR,
+     *  add received commits to the commit graph and the commitID index.
+     *  Return the tip commitID of the pack. Streams are checked by the
+     *  CRC-32 of gzip, so a broken transfer never reaches the object folder
+     *  unnoticed, and each object is re-hashed against its name before it
+     *  is written. Chunked blobs wait until their chunks have arrived. */
+    public static String read(InputStream in) {
+        Trace.Region region = Trace.region("pack.read");
+        List<String> commits = new ArrayList<>();
+        // Files this pack added, removed again if the pack turns out bad
+        List<File> written = new ArrayList<>();
+        String tip;
+        try {
+            tip = readObjects(in, commits, written);
+        } catch (RuntimeException excp) {
+            for (File f : written) {
+                f.delete();
+            }
+            throw excp;
+        }
+        region.close();
+        Trace.count("pack.commits", commits.size());
+        if (!commits.isEmpty()) {
+            CommitGraph.register(tip);
+            Repository.indexCommitIDs(commits);
+        }
+        return tip;
+    }
+
+    /** Save verified objects of the pack in IN that are missing here, adding
+     *  commitIDs to COMMITS and new files to WRITTEN. Return the tip. */
+    private static String readObjects(InputStream in, List<String> commits, List<File> written) {
+        Map<String, byte[]> chunked = new LinkedHashMap<>();
+        String tip;
+        try (DataInputStream data = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE))) {
+            if (data.readInt() != MAGIC) {
+                throw new IllegalArgumentException("not a gitlet pack");
+            }
+            tip = data.readUTF();
+            byte[] raw = new byte[Utils.UID_LENGTH / 2];
+            for (byte type = data.readByte(); type != END; type = data.readByte()) {
+                data.readFully(raw);
+                String name = Utils.toHex(raw);
+                byte[] bytes = new byte[data.readInt()];
+                data.readFully(bytes);
+                File target;
+                if (type == CHUNK) {
+                    CHUNK_DIR.mkdirs();
+                    target = Utils.join(CHUNK_DIR, name);
+                } else {
+                    target = Utils.join(OBJ_DIR, name);
+                }
+                if (type == COMMIT) {
+                    commits.add(name);
+                }
+                if (target.exists()) {
+                    continue;
+                }
+                if (type == CHUNK) {
+                    verifyChunk(name, bytes);
+                } else if (verifyObject(name, bytes) instanceof ChunkedBlob) {
+                    // Its chunks come after it
+                    chunked.put(name, bytes);
+                    continue;
+                }
+                Utils.writeContents(target, (Object) bytes);
+                written.add(target);
+            }
+            // Drain the gzip trailer so its CRC is checked
+            while (data.read() >= 0) {
+                continue;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        for (Map.Entry<String, byte[]> e : chunked.entrySet()) {
+            if (!((ChunkedBlob) Utils.deserialize(e.getValue())).hasValidID()) {
+                throw new GitletException("Received object " + e.getKey() + " does not match its name.");
+            }
+            File target = Utils.join(OBJ_DIR, e.getKey());
+            Utils.writeContents(target, (Object) e.getValue());
+            written.add(target);
+        }
+        return tip;
+    }
+
+    /** Exit unless BYTES of chunk NAME hash to NAME. */
+    private static void verifyChunk(String name, byte[] bytes) {
+        if (!Utils.sha1(bytes).equals(name)) {
+            throw new GitletException("Received object " + name + " does not match its name.");
+        }
+    }
+
+    /** Return object NAME read from BYTES, exit unless it re-hashes to NAME.
+     *  The chunks of a chunked blob are not checked here. */
+    private static Serializable verifyObject(String name, byte[] bytes) {
+        Serializable obj;
+        try {
+            obj = Utils.deserialize(bytes);
+        } catch (IllegalArgumentException excp) {
+            obj = null;
+        }
+        boolean valid;
+        if (obj instanceof Commit) {
+            valid = ((Commit) obj).getID().equals(name) && ((Commit) obj).hasValidID();
+        } else if (obj instanceof Blob) {
+            valid = ((Blob) obj).getBlobID().equals(name) && ((Blob) obj).hasValidID();
+        } else if (obj instanceof ChunkedBlob) {
+            valid = ((ChunkedBlob) obj).getBlobID().equals(name);
+        } else {
+            valid = false;
+        }
+        if (!valid) {
+            throw new GitletException("Received object " + name + " does not match its name.");
+        }
+        return obj;
+    }
+
+    /** Return commit with COMMITID in OBJ_DIR. */
+    private static Commit readCommit(String commitID) {
+        return Utils.readObject(Utils.join(OBJ_DIR, commitID), Commit.class);
+    }
+}
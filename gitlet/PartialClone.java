@@ -0,0 +1,146 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.*;
+
+import static gitlet.Repository.*;
+
+/** PartialClone copies another repository on a local path without all of
+ *  its history. With a depth only the newest commits of each branch are
+ *  copied, the oldest of them are listed in SHALLOW and treated as having no
+ *  parents. Without blobs only commits are copied, the source is saved in
+ *  PROMISOR and each blob is copied from there the first time it is read.
+ */
+public class PartialClone {
+
+    /** CommitIDs whose parents were not copied, read on first use. */
+    private static Set<String> shallow;
+
+    /** Objects folder of the promisor repository, read on first use. */
+    private static File promisor;
+
+    /** Copy the repository in SRCDIR (a .gitlet folder) into CWD. Copy at most
+     *  DEPTH commits from each branch tip (all if DEPTH is 0), and only the
+     *  blobs of the checked out commit are copied now if BLOBLESS. */
+    public static void clone(File srcDir, int depth, boolean blobless) {
+        File srcObjDir = Utils.join(srcDir, "objects");
+        File srcHeads = Utils.join(srcDir, "refs", "heads");
+        GITLET_DIR.mkdirs();
+        OBJ_DIR.mkdirs();
+        HEADS_DIR.mkdirs();
+        // Walk breadth first from all tips, stop at DEPTH
+        Map<String, Integer> depths = new HashMap<>();
+        Queue<String> q = new ArrayDeque<>();
+        for (String br : Utils.plainFilenamesIn(srcHeads)) {
+            String id = Utils.readObject(Utils.join(srcHeads, br), String.class);
+            Reflog.update(br, id, "clone");
+            if (depths.putIfAbsent(id, 1) == null) {
+                q.add(id);
+            }
+        }
+        // Commits at the depth limit -> their parents, which are not walked
+        Map<String, List<String>> boundary = new TreeMap<>();
+        TrieIndex index = new TrieIndex();
+        Set<String> blobs = new HashSet<>();
+        while (!q.isEmpty()) {
+            String id = q.poll();
+            copy(srcObjDir, OBJ_DIR, id);
+            index.add(id);
+            Commit commit = Utils.readObject(Utils.join(OBJ_DIR, id), Commit.class);
+            blobs.addAll(commit.getSavedBlobs().values());
+            List<String> parents = new ArrayList<>(2);
+            if (!commit.getFirstParentID().equals("")) {
+                parents.add(commit.getFirstParentID());
+            }
+            if (commit.getMergeParentID() != null) {
+                parents.add(commit.getMergeParentID());
+            }
+            int d = depths.get(id);
+            if (depth > 0 && d >= depth && !parents.isEmpty()) {
+                boundary.put(id, parents);
+                continue;
+            }
+            for (String pid : parents) {
+                if (depths.putIfAbsent(pid, d + 1) == null) {
+                    q.add(pid);
+                }
+            }
+        }
+        // Parents copied anyway, as commits of another tip, are not missing
+        boundary.values().removeIf(parents -> depths.keySet().containsAll(parents));
+        if (!boundary.isEmpty()) {
+            Utils.writeContents(SHALLOW, String.join("\n", boundary.keySet()) + "\n");
+        }
+        if (blobless) {
+            Utils.writeContents(PROMISOR, srcObjDir.getAbsolutePath());
+        } else {
+            for (String blobID : blobs) {
+                copyBlob(srcObjDir, blobID);
+            }
+        }
+        Utils.writeObject(COMMIT_ID_INDEX, index);
+        String head = Utils.readObject(Utils.join(srcDir, "head"), String.class);
+        Utils.writeObject(HEAD, head);
+        Reflog.append(Reflog.logOf(Reflog.HEAD_REF), null,
+                Utils.readObject(Utils.join(HEADS_DIR, head), String.class), "clone");
+        new Staging().saveStaging();
+        Utils.writeContents(REPO_FORMAT, FORMAT_VERSION + "\n");
+        CommitGraph.load();
+    }
+
+    /** Copy object NAME from SRC folder to DST folder if missing. */
+    private static void copy(File src, File dst, String name) {
+        File target = Utils.join(dst, name);
+        if (!target.exists()) {
+            Utils.writeContents(target, (Object) Utils.readContents(Utils.join(src, name)));
+        }
+    }
+
+    /** Copy blob BLOBID and chunks it is made of from SRCOBJDIR. */
+    private static void copyBlob(File srcObjDir, String blobID) {
+        copy(srcObjDir, OBJ_DIR, blobID);
+        File blobFile = Utils.join(OBJ_DIR, blobID);
+        Serializable obj = Utils.readObject(blobFile, Serializable.class);
+        if (obj instanceof ChunkedBlob) {
+            CHUNK_DIR.mkdirs();
+            for (String chunkID : ((ChunkedBlob) obj).getChunkIDs()) {
+                copy(Utils.join(srcObjDir, "chunks"), CHUNK_DIR, chunkID);
+            }
+        }
+    }
+
+    /** Return true if commit with COMMITID was copied without its parents. */
+    public static synchronized boolean isShallow(String commitID) {
+        if (shallow == null) {
+            shallow = new HashSet<>();
+            if (SHALLOW.exists()) {
+                for (String line : Utils.readContentsAsString(SHALLOW).split("\n")) {
+                    if (!line.isEmpty()) {
+                        shallow.add(line);
+                    }
+                }
+            }
+        }
+        return shallow.contains(commitID);
+    }
+
+    /** Return true if blobs may be missing and fetched from a promisor. */
+    public static synchronized boolean hasPromisor() {
+        if (promisor == null && PROMISOR.exists()) {
+            promisor = new File(Utils.readContentsAsString(PROMISOR));
+        }
+        return promisor != null;
+    }
+
+    /** Return file of object with ID in OBJ_DIR, copied from the promisor
+     *  first if it is missing here. */
+    public static File object(String id) {
+        File file = Utils.join(OBJ_DIR, id);
+        if (!file.exists() && hasPromisor()) {
+            Trace.count("promisor.fetch");
+            copyBlob(promisor, id);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,178 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.*;
+
+import static gitlet.Repository.*;
+
+/** ReachabilityIndex stores RoaringBitmaps of ancestors for selected commits
+ *  in COMMIT_BITMAPS, beside COMMIT_GRAPH. Bits are CommitGraph positions.
+ *  Every STRIDE-th position is selected, so answering reachability for any
+ *  commit walks at most a few graph entries before hitting a stored bitmap.
+ *  A stored bitmap only holds the ancestors that the nearest selected
+ *  commit on its first-parent chain does not reach, so the index grows with
+ *  the number of commits rather than with history length squared.
+ */
+public class ReachabilityIndex implements Serializable {
+
+    /** Pinned, indexes of full bitmaps fail to read and are rebuilt. */
+    private static final long serialVersionUID = 6270913583620417187L;
+
+    /** Store a bitmap for every STRIDE-th commit position. */
+    private static final int STRIDE = 32;
+
+    /** Ancestors of a selected position missing from those of its base. */
+    private static class Delta implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        /** Nearest selected first-parent ancestor, NONE if there is none. */
+        private final int base;
+
+        /** Positions reachable from the selected one but not from base. */
+        private final RoaringBitmap bits;
+
+        Delta(int base, RoaringBitmap bits) {
+            this.base = base;
+            this.bits = bits;
+        }
+    }
+
+    /** Selected graph position -> its delta. */
+    private final Map<Integer, Delta> deltas = new HashMap<>();
+
+    /** Graph used to walk to the nearest stored bitmaps. */
+    private transient CommitGraph graph;
+
+    /** Return index for GRAPH, empty if COMMIT_BITMAPS is missing. */
+    public static ReachabilityIndex load(CommitGraph graph) {
+        return load(graph, COMMIT_BITMAPS);
+    }
+
+    /** Return index for GRAPH saved in FILE, empty if FILE is missing or
+     *  unreadable. */
+    static ReachabilityIndex load(CommitGraph graph, File file) {
+        ReachabilityIndex index = new ReachabilityIndex();
+        if (file.exists()) {
+            try {
+                index = Utils.readObject(file, ReachabilityIndex.class);
+            } catch (IllegalArgumentException excp) {
+                // Written in an older format, only a cache of the graph
+            }
+        }
+        index.graph = graph;
+        return index;
+    }
+
+    /** Return index for commit graph saved in COMMIT_GRAPH. */
+    public static ReachabilityIndex load() {
+        return load(CommitGraph.load());
+    }
+
+    /** Store bitmaps for selected positions in GRAPH from FROM on. */
+    static void update(CommitGraph graph, int from) {
+        int first = (from + STRIDE - 1) / STRIDE * STRIDE;
+        if (first >= graph.size()) {
+            return;
+        }
+        ReachabilityIndex index = load(graph);
+        if (index.deltas.isEmpty()) {
+            // New or unreadable index, select earlier positions too
+            first = 0;
+        }
+        for (int pos = first; pos < graph.size(); pos += STRIDE) {
+            index.select(pos);
+        }
+        Utils.writeObject(COMMIT_BITMAPS, index);
+    }
+
+    /** Store the delta of POS against its nearest selected first-parent
+     *  ancestor. */
+    private void select(int pos) {
+        int base = graph.firstParent(pos);
+        while (base != CommitGraph.NONE && !deltas.containsKey(base)) {
+            base = graph.firstParent(base);
+        }
+        RoaringBitmap below = base == CommitGraph.NONE ? new RoaringBitmap() : reach(base);
+        RoaringBitmap bits = new RoaringBitmap();
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(pos);
+        while (!stack.isEmpty()) {
+            int cur = stack.pop();
+            if (cur == CommitGraph.NONE || below.contains(cur) || bits.contains(cur)) {
+                continue;
+            }
+            bits.add(cur);
+            stack.push(graph.firstParent(cur));
+            stack.push(graph.mergeParent(cur));
+        }
+        deltas.put(pos, new Delta(base, bits));
+    }
+
+    /** Return graph this index is used with. */
+    public CommitGraph graph() {
+        return graph;
+    }
+
+    /** Return bitmap of all positions reachable from POS, POS included. */
+    public RoaringBitmap reach(int pos) {
+        RoaringBitmap res = new RoaringBitmap();
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(pos);
+        while (!stack.isEmpty()) {
+            int cur = stack.pop();
+            if (cur == CommitGraph.NONE || res.contains(cur)) {
+                continue;
+            }
+            Delta d = deltas.get(cur);
+            if (d != null) {
+                // Ancestors of a delta are in it or reachable from its base
+                res.or(d.bits);
+                stack.push(d.base);
+                continue;
+            }
+            res.add(cur);
+            stack.push(graph.firstParent(cur));
+            stack.push(graph.mergeParent(cur));
+        }
+        return res;
+    }
+
+    /** Return true if commit ANCESTOR is reachable from commit DESCENDANT. */
+    public boolean isAncestor(String ancestor, String descendant) {
+        int a = graph.position(ancestor);
+        int d = graph.position(descendant);
+        if (a == CommitGraph.NONE || d == CommitGraph.NONE) {
+            return false;
+        }
+        // A commit never reaches one with a larger generation number
+        if (graph.generation(a) > graph.generation(d)) {
+            return false;
+        }
+        return reach(d).contains(a);
+    }
+
+    /** Return the closest common ancestor of A and B, walking A in
+     *  breadth first order and testing against the ancestors of B. */
+    public String splitPoint(String a, String b) {
+        RoaringBitmap reachB = reach(graph.position(b));
+        Set<Integer> seen = new HashSet<>();
+        Queue<Integer> q = new ArrayDeque<>();
+        q.add(graph.position(a));
+        while (!q.isEmpty()) {
+            int cur = q.poll();
+            if (reachB.contains(cur)) {
+                return graph.id(cur);
+            }
+            int p1 = graph.firstParent(cur);
+            int p2 = graph.mergeParent(cur);
+            if (p1 != CommitGraph.NONE && seen.add(p1)) {
+                q.add(p1);
+            }
+            if (p2 != CommitGraph.NONE && seen.add(p2)) {
+                q.add(p2);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,284 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+import static gitlet.Repository.*;
+
+/** Reflog keeps every move of a branch, and of HEAD, in an append-only file
+ *  under LOGS_DIR. Records have a fixed size: time in millis, old and new
+ *  raw commitIDs and a short action, so record i is at i * RECORD_SIZE and
+ *  times never decrease, which lets ref@{n} and ref@{2.hours.ago} read a
+ *  handful of records by binary search however long the log grows.
+ */
+public class Reflog {
+
+    /** Bytes of one record. */
+    static final int RECORD_SIZE = 64;
+
+    /** Bytes of a raw commitID. */
+    private static final int RAW_LENGTH = Utils.UID_LENGTH / 2;
+
+    /** Bytes of the action, ASCII padded with zeros. */
+    private static final int ACTION_SIZE = RECORD_SIZE - 8 - 2 * RAW_LENGTH;
+
+    /** Log of the checked out commit. */
+    static final String HEAD_REF = "HEAD";
+
+    /** One move of a ref from OLDID (null if it was created) to NEWID. */
+    public static class Entry {
+        public final long time;
+        public final String oldID;
+        public final String newID;
+        public final String action;
+
+        Entry(long time, String oldID, String newID, String action) {
+            this.time = time;
+            this.oldID = oldID;
+            this.newID = newID;
+            this.action = action;
+        }
+    }
+
+    /** Point BRANCH to commit ID and log the move as ACTION. */
+    public static void update(String branch, String id, String action) {
+        File ref = Utils.join(HEADS_DIR, branch);
+        String old = ref.isFile() ? Utils.readObject(ref, String.class) : null;
+        ref.getParentFile().mkdirs();
+        Utils.writeObject(ref, id);
+        if (id.equals(old)) {
+            return;
+        }
+        append(logOf(branch), old, id, action);
+        if (HEAD.exists() && Utils.readObject(HEAD, String.class).equals(branch)) {
+            append(logOf(HEAD_REF), old, id, action);
+        }
+    }
+
+    /** Return log file of REF, a branch name or HEAD_REF. */
+    static File logOf(String ref) {
+        return ref.equals(HEAD_REF) ? Utils.join(LOGS_DIR, HEAD_REF)
+                : Utils.join(LOGS_DIR, "refs", "heads", ref);
+    }
+
+    /** Add a move from OLD (null if none) to ID made by ACTION to LOG. */
+    static void append(File log, String old, String id, String action) {
+        log.getParentFile().mkdirs();
+        try (RandomAccessFile f = new RandomAccessFile(log, "rw")) {
+            // A torn record left by a crash is overwritten
+            long n = f.length() / RECORD_SIZE;
+            long time = System.currentTimeMillis();
+            if (n > 0) {
+                // Keep times sorted even if the clock went back
+                f.seek((n - 1) * RECORD_SIZE);
+                time = Math.max(time, f.readLong());
+            }
+            ByteBuffer buf = ByteBuffer.allocate(RECORD_SIZE);
+            buf.putLong(time);
+            buf.put(old == null ? new byte[RAW_LENGTH] : Utils.fromHex(old));
+            buf.put(Utils.fromHex(id));
+            byte[] act = action.getBytes(StandardCharsets.US_ASCII);
+            buf.put(act, 0, Math.min(act.length, ACTION_SIZE));
+            f.seek(n * RECORD_SIZE);
+            f.write(buf.array());
+            f.setLength((n + 1) * RECORD_SIZE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return record I of F. */
+    private static Entry read(RandomAccessFile f, long i) throws IOException {
+        byte[] rec = new byte[RECORD_SIZE];
+        f.seek(i * RECORD_SIZE);
+        f.readFully(rec);
+        ByteBuffer buf = ByteBuffer.wrap(rec);
+        long time = buf.getLong();
+        byte[] raw = new byte[RAW_LENGTH];
+        buf.get(raw);
+        String old = Arrays.equals(raw, new byte[RAW_LENGTH]) ? null : Utils.toHex(raw);
+        buf.get(raw);
+        String id = Utils.toHex(raw);
+        int len = 0;
+        while (len < ACTION_SIZE && rec[buf.position() + len] != 0) {
+            len += 1;
+        }
+        return new Entry(time, old, id, new String(rec, buf.position(), len, StandardCharsets.US_ASCII));
+    }
+
+    /** Return index of the first record of F with time at least TIME, the
+     *  number of records if there is none. */
+    private static long firstAtOrAfter(RandomAccessFile f, long time) throws IOException {
+        long lo = 0;
+        long hi = f.length() / RECORD_SIZE;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            f.seek(mid * RECORD_SIZE);
+            if (f.readLong() < time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Return commitID of REV in the form ref@{n} or ref@{date}, an empty ref
+     *  meaning the current branch. Null if REV is not of this form or the
+     *  log does not go back that far. */
+    public static String resolve(String rev) {
+        int at = rev.indexOf("@{");
+        if (at < 0 || !rev.endsWith("}")) {
+            return null;
+        }
+        String ref = at == 0 ? Utils.readObject(HEAD, String.class) : rev.substring(0, at);
+        String spec = rev.substring(at + 2, rev.length() - 1);
+        File log = logOf(ref);
+        if (!log.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile f = new RandomAccessFile(log, "r")) {
+            long n = f.length() / RECORD_SIZE;
+            long i;
+            if (!spec.isEmpty() && spec.chars().allMatch(Character::isDigit)) {
+                i = n - 1 - Long.parseLong(spec);
+            } else {
+                // Last move at or before the time
+                i = firstAtOrAfter(f, parseTime(spec) + 1) - 1;
+            }
+            return i < 0 || i >= n ? null : read(f, i).newID;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return time in millis of SPEC: now, yesterday, N.unit.ago with units
+     *  from second to year, or a local date yyyy-MM-dd[THH:mm[:ss]]. */
+    static long parseTime(String spec) {
+        long now = System.currentTimeMillis();
+        String s = spec.trim().replace(' ', '.');
+        if (s.equals("now")) {
+            return now;
+        }
+        if (s.equals("yesterday")) {
+            return now - 86400_000L;
+        }
+        String[] parts = s.split("\\.");
+        if (parts.length == 3 && parts[2].equals("ago") && parts[0].chars().allMatch(Character::isDigit)
+                && !parts[0].isEmpty()) {
+            String unit = parts[1].endsWith("s") ? parts[1].substring(0, parts[1].length() - 1) : parts[1];
+            long ms = switch (unit) {
+                case "second" -> 1000L;
+                case "minute" -> 60_000L;
+                case "hour" -> 3600_000L;
+                case "day" -> 86400_000L;
+                case "week" -> 7 * 86400_000L;
+                case "month" -> 30 * 86400_000L;
+                case "year" -> 365 * 86400_000L;
+                default -> -1L;
+            };
+            if (ms > 0) {
+                return now - Long.parseLong(parts[0]) * ms;
+            }
+        }
+        try {
+            ZoneId zone = ZoneId.systemDefault();
+            if (spec.length() == 10) {
+                return LocalDate.parse(spec).atStartOfDay(zone).toInstant().toEpochMilli();
+            }
+            return LocalDateTime.parse(spec.replace(' ', 'T')).atZone(zone).toInstant().toEpochMilli();
+        } catch (DateTimeParseException excp) {
+            throw new GitletException("Invalid date: " + spec);
+        }
+    }
+
+    /** Print moves of REF, newest first. */
+    public static void print(String ref) {
+        File log = logOf(ref);
+        if (!log.isFile()) {
+            return;
+        }
+        try (RandomAccessFile f = new RandomAccessFile(log, "r")) {
+            long n = f.length() / RECORD_SIZE;
+            for (long i = n - 1; i >= 0; --i) {
+                Entry e = read(f, i);
+                System.out.println(e.newID.substring(0, 7) + " " + ref + "@{" + (n - 1 - i) + "}: " + e.action);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return every commitID in every log, old and new. */
+    static Set<String> commitIDs() {
+        Set<String> res = new HashSet<>();
+        for (File log : logs(LOGS_DIR)) {
+            try (RandomAccessFile f = new RandomAccessFile(log, "r")) {
+                long n = f.length() / RECORD_SIZE;
+                for (long i = 0; i < n; ++i) {
+                    Entry e = read(f, i);
+                    if (e.oldID != null) {
+                        res.add(e.oldID);
+                    }
+                    res.add(e.newID);
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return res;
+    }
+
+    /** Drop records older than CUTOFF from every log, return how many. */
+    static long expire(long cutoff) {
+        long expired = 0;
+        for (File log : logs(LOGS_DIR)) {
+            File tmp = new File(log.getPath() + ".tmp");
+            try (RandomAccessFile f = new RandomAccessFile(log, "r")) {
+                long n = f.length() / RECORD_SIZE;
+                long keep = firstAtOrAfter(f, cutoff);
+                if (keep == 0) {
+                    continue;
+                }
+                expired += keep;
+                // Records are sorted, the kept ones are one block at the end
+                byte[] rest = new byte[(int) ((n - keep) * RECORD_SIZE)];
+                f.seek(keep * RECORD_SIZE);
+                f.readFully(rest);
+                Utils.writeContents(tmp, rest);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            try {
+                Files.move(tmp.toPath(), log.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return expired;
+    }
+
+    /** Return every log file in DIR. */
+    private static List<File> logs(File dir) {
+        List<File> res = new ArrayList<>();
+        File[] entries = dir.listFiles();
+        for (File f : entries == null ? new File[0] : entries) {
+            if (f.isDirectory()) {
+                res.addAll(logs(f));
+            } else if (!f.getName().endsWith(".tmp")) {
+                res.add(f);
+            }
+        }
+        return res;
+    }
+}
@@ -0,0 +1,231 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static gitlet.Repository.*;
+
+/** Remote keeps names of other repositories on local paths and moves
+ *  commits between them. Like git over a local path, the other side runs in
+ *  its own process (upload-pack for fetch, receive-pack for push) and the
+ *  two sides exchange one Pack through its stdin and stdout. Fetched
+ *  branches are saved as REMOTE/BRANCH under HEADS_DIR.
+ */
+public class Remote {
+
+    /** Remote name -> path of its .gitlet folder, as given. */
+    private static TreeMap<String, String> loadRemotes() {
+        if (!REMOTES.exists()) {
+            return new TreeMap<>();
+        }
+        @SuppressWarnings("unchecked")
+        TreeMap<String, String> remotes = Utils.readObject(REMOTES, TreeMap.class);
+        return remotes;
+    }
+
+    /** Save remote NAME at PATH. */
+    public static void add(String name, String path) {
+        TreeMap<String, String> remotes = loadRemotes();
+        if (remotes.containsKey(name)) {
+            throw new GitletException("A remote with that name already exists.");
+        }
+        remotes.put(name, path.replace("/", File.separator));
+        Utils.writeObject(REMOTES, remotes);
+    }
+
+    /** Forget remote NAME, its fetched branches are kept. */
+    public static void remove(String name) {
+        TreeMap<String, String> remotes = loadRemotes();
+        if (remotes.remove(name) == null) {
+            throw new GitletException("A remote with that name does not exist.");
+        }
+        Utils.writeObject(REMOTES, remotes);
+    }
+
+    /** Return .gitlet folder of remote NAME, exit if it is missing. */
+    private static File gitletDir(String name) {
+        String path = loadRemotes().get(name);
+        File dir = path == null ? null : new File(path);
+        if (dir != null && !dir.isAbsolute()) {
+            dir = Utils.join(CWD, path);
+        }
+        if (dir == null || !dir.isDirectory()) {
+            throw new GitletException("Remote directory not found.");
+        }
+        return dir;
+    }
+
+    /** Return .gitlet folders of all remotes, missing ones included. */
+    static List<File> gitletDirs() {
+        List<File> res = new ArrayList<>();
+        for (String path : loadRemotes().values()) {
+            File dir = new File(path);
+            res.add(dir.isAbsolute() ? dir : Utils.join(CWD, path));
+        }
+        return res;
+    }
+
+    /** Return commitIDs of all branches in HEADSDIR, fetched ones included. */
+    static List<String> headIDs(File headsDir) {
+        List<String> res = new ArrayList<>();
+        File[] entries = headsDir.listFiles();
+        if (entries == null) {
+            return res;
+        }
+        for (File f : entries) {
+            if (f.isDirectory()) {
+                res.addAll(headIDs(f));
+            } else {
+                res.add(Utils.readObject(f, String.class));
+            }
+        }
+        return res;
+    }
+
+    /** Return names of every branch in HEADSDIR in order, fetched ones as
+     *  REMOTE/BRANCH. */
+    static List<String> branchNames(File headsDir) {
+        List<String> res = new ArrayList<>();
+        File[] entries = headsDir.listFiles();
+        if (entries == null) {
+            return res;
+        }
+        for (File f : entries) {
+            if (f.isDirectory()) {
+                for (String br : branchNames(f)) {
+                    res.add(f.getName() + "/" + br);
+                }
+            } else {
+                res.add(f.getName());
+            }
+        }
+        Collections.sort(res);
+        return res;
+    }
+
+    /** Copy BRANCH of remote NAME and the objects it needs to branch NAME/BRANCH. */
+    public static void fetch(String name, String branch) {
+        File remoteDir = gitletDir(name);
+        File remoteRef = Utils.join(remoteDir, "refs", "heads", branch);
+        if (!remoteRef.isFile()) {
+            throw new GitletException("That remote does not have that branch.");
+        }
+        String want = Utils.readObject(remoteRef, String.class);
+        // Nothing to transfer if the tip is already here
+        if (!Utils.join(OBJ_DIR, want).exists()) {
+            Process p = spawn(remoteDir, ProcessBuilder.Redirect.PIPE, "upload-pack", want);
+            try (Writer haves = new OutputStreamWriter(p.getOutputStream(), StandardCharsets.UTF_8)) {
+                for (String id : headIDs(HEADS_DIR)) {
+                    haves.write(id + "\n");
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            try {
+                Pack.read(p.getInputStream());
+            } catch (IllegalArgumentException excp) {
+                // An empty or cut stream when upload-pack failed, say why
+                waitFor(p);
+                throw excp;
+            }
+            waitFor(p);
+        }
+        Reflog.update(name + "/" + branch, want, "fetch");
+    }
+
+    /** Send commits of current branch missing at remote NAME and move its
+     *  BRANCH there. Only fast-forwards are allowed, and not to the branch
+     *  checked out there since its working tree would not follow. */
+    public static void push(String name, String branch) {
+        File remoteDir = gitletDir(name);
+        checkNotCheckedOut(Utils.join(remoteDir, HEAD.getName()), branch);
+        File remoteRef = Utils.join(remoteDir, "refs", "heads", branch);
+        String old = remoteRef.isFile() ? Utils.readObject(remoteRef, String.class) : "";
+        String head = Utils.readObject(Utils.join(HEADS_DIR,
+                Utils.readObject(HEAD, String.class)), String.class);
+        if (!old.isEmpty() && !old.equals(head)
+                && !ReachabilityIndex.load().isAncestor(old, head)) {
+            throw new GitletException("Please pull down remote changes before pushing.");
+        }
+        // Every branch of the remote tells what it has
+        List<String> haves = headIDs(Utils.join(remoteDir, "refs", "heads"));
+        Process p = spawn(remoteDir, ProcessBuilder.Redirect.INHERIT,
+                "receive-pack", branch, old.isEmpty() ? "-" : old);
+        try {
+            Pack.write(p.getOutputStream(), head, haves);
+        } catch (IllegalArgumentException excp) {
+            // Broken pipe when receive-pack failed, say why
+            waitFor(p);
+            throw excp;
+        }
+        waitFor(p);
+    }
+
+    /** Plumbing run at the remote by fetch: read commitIDs the other side
+     *  has from stdin, write a pack of WANT to stdout. */
+    public static void uploadPack(String want) {
+        List<String> haves = new ArrayList<>();
+        try {
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                haves.add(line.trim());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Pack.write(new FileOutputStream(FileDescriptor.out), want, haves);
+    }
+
+    /** Plumbing run at the remote by push: read a pack from stdin and move
+     *  BRANCH to its tip if BRANCH still points to OLD ("-" for none). */
+    public static void receivePack(String branch, String old) {
+        String tip = Pack.read(System.in);
+        checkNotCheckedOut(HEAD, branch);
+        File ref = Utils.join(HEADS_DIR, branch);
+        String cur = ref.isFile() ? Utils.readObject(ref, String.class) : "-";
+        if (!cur.equals(old)) {
+            // Someone else pushed after we read the branch
+            throw new GitletException("Please pull down remote changes before pushing.");
+        }
+        Reflog.update(branch, tip, "push");
+    }
+
+    /** Exit if BRANCH is the one named in the head file HEADFILE. */
+    private static void checkNotCheckedOut(File headFile, String branch) {
+        if (headFile.isFile() && Utils.readObject(headFile, String.class).equals(branch)) {
+            throw new GitletException("Cannot push to the checked out branch of the remote.");
+        }
+    }
+
+    /** Start gitlet in the working folder of REMOTEDIR with ARGS, its
+     *  stdout goes to OUTPUT. */
+    private static Process spawn(File remoteDir, ProcessBuilder.Redirect output, String... args) {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        List<String> cmd = new ArrayList<>(List.of(java, "-cp",
+                System.getProperty("java.class.path"), "gitlet.Main"));
+        cmd.addAll(List.of(args));
+        ProcessBuilder pb = new ProcessBuilder(cmd);
+        pb.directory(remoteDir.getAbsoluteFile().getParentFile());
+        pb.redirectOutput(output);
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        try {
+            return pb.start();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Wait for P to exit, exit too if it failed. */
+    private static void waitFor(Process p) {
+        try {
+            if (p.waitFor() != 0) {
+                // The other side already printed why on the shared stderr
+                throw new GitletException();
+            }
+        } catch (InterruptedException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package gitlet;
+
+import java.util.*;
+import java.util.function.Function;
+
+/** Renames pairs deleted files with added files of similar contents. Blob
+ *  IDs include the path, so exact matches are paired first by an ID of the
+ *  contents only, which chunked blobs give without reading their chunks.
+ *  The rest are compared by counting bytes of shared chunks (a chunk ends at
+ *  a newline or after 64 bytes), only if both sides are small enough to keep
+ *  the score matrix bounded. Contents are read only for files scored.
+ */
+public class Renames {
+
+    /** Lowest similarity, in percent, of a rename. */
+    public static final int MIN_SCORE = 50;
+
+    /** Inexact detection is skipped if sources times targets exceeds this. */
+    private static final int MAX_MATRIX = 1 << 16;
+
+    /** Longest chunk of the similarity signature. */
+    private static final int MAX_CHUNK = 64;
+
+    /** A detected rename from FROM to TO with SCORE percent similar contents. */
+    public static class Rename {
+        public final String from;
+        public final String to;
+        public final int score;
+
+        Rename(String from, String to, int score) {
+            this.from = from;
+            this.to = to;
+            this.score = score;
+        }
+    }
+
+    /** Names of files on one side of a comparison, with how to identify
+     *  and read their contents. */
+    public static class Side {
+        private final Collection<String> names;
+        private final Function<String, String> contentIDs;
+        private final Function<String, byte[]> contents;
+
+        private Side(Collection<String> names, Function<String, String> contentIDs,
+                     Function<String, byte[]> contents) {
+            this.names = names;
+            this.contentIDs = contentIDs;
+            this.contents = contents;
+        }
+
+        /** Return side of files NAMES saved as the blobs BLOBIDS gives. */
+        public static Side blobs(Collection<String> names, Function<String, String> blobIDs) {
+            return new Side(names, name -> Blob.contentID(blobIDs.apply(name)),
+                    name -> Blob.readContents(blobIDs.apply(name)));
+        }
+
+        /** Return side of files NAMES in the working directory. */
+        public static Side files(Collection<String> names) {
+            return new Side(names, name -> Blob.contentID(Utils.join(Repository.CWD, name)),
+                    name -> Utils.readContents(Utils.join(Repository.CWD, name)));
+        }
+    }
+
+    /** Return renames from files of SOURCES to files of TARGETS, each name
+     *  used at most once. */
+    public static List<Rename> detect(Side sources, Side targets) {
+        List<Rename> res = new ArrayList<>();
+        if (sources.names.isEmpty() || targets.names.isEmpty()) {
+            return res;
+        }
+        Trace.Region region = Trace.region("renames.exact");
+        Set<String> src = new TreeSet<>(sources.names);
+        Set<String> dst = new TreeSet<>();
+        // Content ID -> sources with those contents
+        Map<String, Deque<String>> byID = new HashMap<>();
+        for (String name : src) {
+            byID.computeIfAbsent(sources.contentIDs.apply(name), k -> new ArrayDeque<>()).add(name);
+        }
+        for (String name : new TreeSet<>(targets.names)) {
+            Deque<String> same = byID.get(targets.contentIDs.apply(name));
+            if (same != null && !same.isEmpty()) {
+                String from = same.poll();
+                src.remove(from);
+                res.add(new Rename(from, name, 100));
+            } else {
+                dst.add(name);
+            }
+        }
+        region.close();
+        if (src.isEmpty() || dst.isEmpty() || (long) src.size() * dst.size() > MAX_MATRIX) {
+            return res;
+        }
+        region = Trace.region("renames.similar");
+        List<String> srcNames = new ArrayList<>(src);
+        List<String> dstNames = new ArrayList<>(dst);
+        long[] srcSizes = new long[srcNames.size()];
+        long[] dstSizes = new long[dstNames.size()];
+        List<Map<Integer, Integer>> srcSigs = new ArrayList<>();
+        List<Map<Integer, Integer>> dstSigs = new ArrayList<>();
+        for (int i = 0; i < srcNames.size(); ++i) {
+            byte[] contents = sources.contents.apply(srcNames.get(i));
+            srcSizes[i] = contents.length;
+            srcSigs.add(signature(contents));
+        }
+        for (int j = 0; j < dstNames.size(); ++j) {
+            byte[] contents = targets.contents.apply(dstNames.get(j));
+            dstSizes[j] = contents.length;
+            dstSigs.add(signature(contents));
+        }
+        // Candidates scored as (score << 32 | src << 16 | dst), best first
+        List<Long> candidates = new ArrayList<>();
+        for (int i = 0; i < srcNames.size(); ++i) {
+            long a = srcSizes[i];
+            for (int j = 0; j < dstNames.size(); ++j) {
+                long b = dstSizes[j];
+                long max = Math.max(a, b);
+                // Size difference alone rules out the pair
+                if (max == 0 || Math.min(a, b) * 100 < max * MIN_SCORE) {
+                    continue;
+                }
+                int score = (int) (common(srcSigs.get(i), dstSigs.get(j)) * 100 / max);
+                if (score >= MIN_SCORE) {
+                    candidates.add(((long) score << 32) | ((long) i << 16) | j);
+                }
+            }
+        }
+        Trace.count("renames.pairs", (long) srcNames.size() * dstNames.size());
+        candidates.sort(Comparator.reverseOrder());
+        Set<Integer> usedSrc = new HashSet<>();
+        Set<Integer> usedDst = new HashSet<>();
+        for (long c : candidates) {
+            int i = (int) ((c >> 16) & 0xffff);
+            int j = (int) (c & 0xffff);
+            if (!usedSrc.contains(i) && !usedDst.contains(j)) {
+                usedSrc.add(i);
+                usedDst.add(j);
+                res.add(new Rename(srcNames.get(i), dstNames.get(j), (int) (c >>> 32)));
+            }
+        }
+        region.close();
+        res.sort(Comparator.comparing(r -> r.to));
+        return res;
+    }
+
+    /** Return chunk hash -> total bytes of chunks with that hash in CONTENTS. */
+    private static Map<Integer, Integer> signature(byte[] contents) {
+        Map<Integer, Integer> sig = new HashMap<>();
+        int start = 0;
+        int hash = 0;
+        for (int i = 0; i < contents.length; ++i) {
+            hash = hash * 31 + contents[i];
+            if (contents[i] == '\n' || i - start + 1 == MAX_CHUNK || i == contents.length - 1) {
+                sig.merge(hash, i - start + 1, Integer::sum);
+                start = i + 1;
+                hash = 0;
+            }
+        }
+        return sig;
+    }
+
+    /** Return bytes shared by chunks of signatures A and B. */
+    private static long common(Map<Integer, Integer> a, Map<Integer, Integer> b) {
+        if (a.size() > b.size()) {
+            return common(b, a);
+        }
+        long res = 0;
+        for (Map.Entry<Integer, Integer> e : a.entrySet()) {
+            Integer other = b.get(e.getKey());
+            if (other != null) {
+                res += Math.min(e.getValue(), other);
+            }
+        }
+        return res;
+    }
+}
@@ -0,0 +1,102 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static gitlet.Repository.*;
+
+/** RepoPath makes the keys of Commit.savedBlobs, Staging and Blob: paths
+ *  relative to the repository root with '/' separators. Keys are interned,
+ *  so all commits read in one process share one String per path. Tree is
+ *  the file map of a commit, saved with each path stored as the length of
+ *  the prefix it shares with the previous path plus the rest of it.
+ */
+public class RepoPath {
+
+    /** Every path made or read in this process. */
+    private static final Map<String, String> POOL = new ConcurrentHashMap<>();
+
+    /** Return the single copy of PATH. */
+    static String intern(String path) {
+        String res = POOL.putIfAbsent(path, path);
+        return res == null ? path : res;
+    }
+
+    /** Return key of file FILENAME, relative to CWD. */
+    public static String of(String fileName) {
+        String path = new File(fileName).toPath().normalize().toString();
+        return intern(path.replace(File.separatorChar, '/'));
+    }
+
+    /** Return key of FILE, which is in CWD. */
+    public static String of(File file) {
+        return of(CWD.toPath().relativize(file.toPath().toAbsolutePath()).toString());
+    }
+
+    /** File map of a commit, path -> blobID. */
+    public static class Tree extends TreeMap<String, String> {
+
+        public Tree(Map<String, String> m) {
+            super(m);
+        }
+
+        /** Saved as Packed, read back as Tree. */
+        private Object writeReplace() {
+            return new Packed(this);
+        }
+    }
+
+    /** Serialized form of a Tree: count, then per entry the shared prefix
+     *  length, rest length and rest of the UTF-8 path, then raw blobID. */
+    private static class Packed implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] data;
+
+        Packed(Tree tree) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(tree.size());
+                byte[] prev = new byte[0];
+                for (Map.Entry<String, String> e : tree.entrySet()) {
+                    byte[] path = e.getKey().getBytes(StandardCharsets.UTF_8);
+                    int shared = 0;
+                    int max = Math.min(prev.length, path.length);
+                    while (shared < max && prev[shared] == path[shared]) {
+                        shared += 1;
+                    }
+                    out.writeShort(shared);
+                    out.writeShort(path.length - shared);
+                    out.write(path, shared, path.length - shared);
+                    out.write(Utils.fromHex(e.getValue()));
+                    prev = path;
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            data = bytes.toByteArray();
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            Map<String, String> res = new TreeMap<>();
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+                int n = in.readInt();
+                byte[] prev = new byte[0];
+                byte[] raw = new byte[Utils.UID_LENGTH / 2];
+                for (int i = 0; i < n; ++i) {
+                    int shared = in.readUnsignedShort();
+                    byte[] path = Arrays.copyOf(prev, shared + in.readUnsignedShort());
+                    in.readFully(path, shared, path.length - shared);
+                    in.readFully(raw);
+                    res.put(intern(new String(path, StandardCharsets.UTF_8)), Utils.toHex(raw));
+                    prev = path;
+                }
+            } catch (IOException excp) {
+                throw new InvalidObjectException(excp.getMessage());
+            }
+            return new Tree(res);
+        }
+    }
+}
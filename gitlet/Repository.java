@@ -1,9 +1,15 @@
 package gitlet;
 
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.*;
 import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import static gitlet.Utils.*;
 
@@ -24,7 +30,9 @@ public class Repository {
      *              |--master (latest commitID in branch)
      *              |--OtherBranchName (latest commitID in branch)
      *            |--staging-index (File with saved Staging info)
+     *            |--staging-journal (Staging changes since staging-index)
      *      |--HEAD (ref: refs/heads/branch?)(Contents should String name of branch)
+     *      |--format (Version of path keys, missing before RepoPath keys)
      *
      */
 
@@ -43,6 +51,44 @@ public class Repository {
 
     public static final File COMMIT_ID_INDEX = join(OBJ_DIR, "commit-id-index");
 
+    /** Compact history DAG and reachability bitmaps beside it. */
+    public static final File COMMIT_GRAPH = join(OBJ_DIR, "commit-graph");
+    public static final File COMMIT_BITMAPS = join(OBJ_DIR, "commit-bitmaps");
+
+    /** Content-defined chunks of large files and their dedup statistics. */
+    public static final File CHUNK_DIR = join(OBJ_DIR, "chunks");
+    public static final File CHUNK_STATS = join(CHUNK_DIR, "stats");
+
+    /** Journal of the file system monitor and the status cache built on it. */
+    public static final File FSMONITOR_DIR = join(GITLET_DIR, "fsmonitor");
+
+    /** Patterns of files present in the working tree, all files if missing. */
+    public static final File SPARSE_CHECKOUT = join(GITLET_DIR, "sparse-checkout");
+
+    /** Commits of a shallow clone copied without parents, and objects
+     *  folder of the repository missing blobs of a blobless clone come from. */
+    public static final File SHALLOW = join(GITLET_DIR, "shallow");
+    public static final File PROMISOR = join(GITLET_DIR, "promisor");
+
+    /** Cached line origins of blamed files. */
+    public static final File BLAME_DIR = join(GITLET_DIR, "blame");
+
+    /** Names and paths of other repositories to fetch from and push to. */
+    public static final File REMOTES = join(GITLET_DIR, "remotes");
+
+    /** Moves of every branch and of HEAD, see Reflog. */
+    public static final File LOGS_DIR = join(GITLET_DIR, "logs");
+
+    /** Branch bisect started on and commits marked since, see Bisect. */
+    public static final File BISECT = join(GITLET_DIR, "bisect");
+
+    /** Work commits of stashed changes, newest first. */
+    public static final File STASH = join(REFS_DIR, "stash");
+
+    /** Marks a repository keyed by RepoPath, older ones need gitlet migrate. */
+    public static final File REPO_FORMAT = join(GITLET_DIR, "format");
+    public static final int FORMAT_VERSION = 1;
+
     /** Read from COMMIT_ID_INDEX file to check prefix of commitID */
     public static TrieIndex prefixCommitID = new TrieIndex();
 
@@ -59,9 +105,8 @@ public class Repository {
     /** gitlet init function */
     public static void init() {
         if (GITLET_DIR.exists()) {
-            System.out.println("A Gitlet version-control system already " +
+            throw new GitletException("A Gitlet version-control system already " +
                     "exists in the current directory.");
-            System.exit(0);
         }
         GITLET_DIR.mkdirs();
         OBJ_DIR.mkdirs();
@@ -70,18 +115,33 @@ public class Repository {
         // Init HEAD, Write String name master to HEAD File
         Utils.writeObject(HEAD, "master");
         curBranchName = getCurBranchName();
-        curCommit.saveCommit(curBranchName);
+        curCommit = new Commit();
+        curCommit.saveCommit(curBranchName, "commit (initial)");
+        curStage = new Staging();
         curStage.saveStaging();
+        Utils.writeContents(REPO_FORMAT, FORMAT_VERSION + "\n");
     }
 
     /** Inputs a command that requires containing a .gitlet subdirectory */
     private static void checkGitletExists() {
         if (!GITLET_DIR.exists()) {
-            System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(0);
+            throw new GitletException("Not in an initialized Gitlet directory.");
+        }
+    }
+
+    /** Exit if this repository was made before paths were relative. */
+    static void checkFormat() {
+        if (GITLET_DIR.exists() && !REPO_FORMAT.exists()) {
+            throw new GitletException("Please run gitlet migrate to update this repository.");
         }
     }
 
+    /** gitlet migrate [old repository folder...] function. */
+    public static void migrate(List<String> roots) {
+        checkGitletExists();
+        Migration.run(roots);
+    }
+
     /** Helper function to return file reference with fileName(String).
      *  Exit when file does not exist in current folder.
      */
@@ -89,8 +149,7 @@ public class Repository {
         File file = join(CWD, fileName);
         // File does not exist, exit!
         if (!file.exists()) {
-            System.out.println("File does not exist.");
-            System.exit(0);
+            throw new GitletException("File does not exist.");
         }
         return file;
     }
@@ -102,11 +161,13 @@ public class Repository {
 
     /** Helper function to return Staging from persistent STAGING_INDEX. */
     private static Staging getCurStage() {
-        return Utils.readObject(STAGING_INDEX, Staging.class);
+        Trace.count("repo.getCurStage");
+        return Staging.load();
     }
 
     /** Helper function to return Commit from persistent HEAD pointer to commit. */
     private static Commit getCurCommit() {
+        Trace.count("repo.getCurCommit");
         // Read from HEAD file for current branch name
         curBranchName = getCurBranchName();
         // File reference to HEADS
@@ -121,6 +182,7 @@ public class Repository {
 
     /** Helper function to return Commit with given branchName. */
     private static Commit getCommit(String branchName) {
+        Trace.count("repo.getCommit");
         // File reference to branch
         File ref = join(HEADS_DIR, branchName);
         // Read from ref about branch commitID
@@ -133,13 +195,15 @@ public class Repository {
 
     private static boolean checkAddIsNeeded(String fileName) {
         File addFile = getFileFromCWD(fileName);
-        String filePath = CWD + "/" + fileName;
+        String filePath = RepoPath.of(fileName);
         // 1. Compare blobID of file in current Commit of this file,
         // if same, don't create new blob to save space
         curCommit = getCurCommit();
         curStage = getCurStage();
         String curCommitBlobID = curCommit.getCommitFileBlobID(filePath);
-        String curBlobID = Utils.sha1(Utils.readContents(addFile), filePath);
+        FsMonitor.Snapshot snap = FsMonitor.snapshot();
+        String curBlobID = snap.blobID(filePath);
+        snap.save();
         if (curCommitBlobID != null && curCommitBlobID.equals(curBlobID)) {
             // System.out.println("Same contents with last commit");
             // Not staged for removal, unstage file in rmBlob
@@ -163,6 +227,11 @@ public class Repository {
     public static void add(String fileName) {
         File addFile = getFileFromCWD(fileName);
         if (checkAddIsNeeded(fileName)) {
+            // Large files are split into chunks shared with other versions
+            if (addFile.length() >= ChunkedBlob.CHUNK_THRESHOLD) {
+                curStage.saveChunkedBlob2Staging(ChunkedBlob.store(addFile));
+                return;
+            }
             // Create matched blobFile is needed.
             Blob blobFile = new Blob(addFile);
             curStage.saveBlob2Staging(blobFile);
@@ -176,29 +245,40 @@ public class Repository {
         curBranchName = getCurBranchName();
         // Failed case
         if (curStage.isStagingEmpty()) {
-            System.out.println("No changes added to the commit.");
-            System.exit(0);
+            throw new GitletException("No changes added to the commit.");
         }
         Commit curCommit = getCurCommit();
         // Create new commit with init info: parent Commit id
+        Trace.Region region = Trace.region("commit.save");
         Commit newCommit = new Commit(curCommit, null, curStage, message);
         // Save current CommitID to branchFile
-        newCommit.saveCommit(curBranchName);
+        newCommit.saveCommit(curBranchName, "commit");
+        region.close();
         // TrieIndex for object Commit in obj folder
+        region = Trace.region("commit.idIndex");
+        indexCommitIDs(List.of(newCommit.getID()));
+        region.close();
+        // Remove Staging area
+        curStage.rmStagingArea();
+    }
+
+    /** Helper function to add COMMITIDS to COMMIT_ID_INDEX in one write. */
+    static void indexCommitIDs(Collection<String> commitIDs) {
         if (COMMIT_ID_INDEX.exists()) {
             prefixCommitID = Utils.readObject(COMMIT_ID_INDEX, TrieIndex.class);
         }
-        prefixCommitID.add(newCommit.getID());
+        for (String id : commitIDs) {
+            prefixCommitID.add(id);
+        }
         Utils.writeObject(COMMIT_ID_INDEX, prefixCommitID);
-        // Remove Staging area
-        curStage.rmStagingArea();
     }
 
     /** gitlet log function. */
     public static void log() {
         curCommit = getCurCommit();
-        // Get parentID and open file iteratively
-        while (!curCommit.getFirstParentID().equals("")) {
+        // Get parentID and open file iteratively, history of a shallow clone ends early
+        while (!curCommit.getFirstParentID().equals("")
+                && !PartialClone.isShallow(curCommit.getID())) {
             // Print info
             curCommit.printLogInfo();
             // Update curCommit with parent id file in object folder
@@ -207,16 +287,82 @@ public class Repository {
             curCommit = Utils.readObject(parent, Commit.class);
         }
         // Only initial commit, print info
-        assert (curCommit.getFirstParentID().equals(""));
         curCommit.printLogInfo();
     }
 
+    /** gitlet log [--all] [--since=date] [--until=date] function, commits of
+     *  the first parent history, or with ALL of every branch and stash entry
+     *  newest first, made between SINCE and UNTIL, null for no bound. Commit
+     *  times come from the commit graph, so only printed commits are read. */
+    public static void log(String since, String until, boolean all) {
+        checkGitletExists();
+        long from = since == null ? Long.MIN_VALUE + 1 : Reflog.parseTime(since);
+        long to = until == null ? Long.MAX_VALUE : Reflog.parseTime(until) + 1;
+        CommitGraph graph = CommitGraph.load();
+        if (all) {
+            int[] found = graph.between(from, to);
+            // The graph also keeps commits no ref leads to any more, stash
+            // entries were added to it when made
+            List<String> refs = Remote.headIDs(HEADS_DIR);
+            refs.addAll(Stash.read());
+            boolean[] live = graph.reachable(refs);
+            for (int i = found.length - 1; i >= 0; --i) {
+                if (!live[found[i]]) {
+                    continue;
+                }
+                readObject(join(OBJ_DIR, graph.id(found[i])), Commit.class).printLogInfo();
+            }
+            return;
+        }
+        int pos = graph.position(getCurCommit().getID());
+        while (pos != CommitGraph.NONE) {
+            long time = graph.time(pos);
+            if (time >= from && time < to) {
+                readObject(join(OBJ_DIR, graph.id(pos)), Commit.class).printLogInfo();
+            } else {
+                Trace.count("log.time.skip");
+            }
+            pos = graph.firstParent(pos);
+        }
+    }
+
+    /** gitlet log -- [file name] function, only commits that changed the file
+     *  from their first parent are printed. Commits are first checked against
+     *  Bloom filters in the commit graph and only read if they might match. */
+    public static void logPath(String fileName) {
+        checkGitletExists();
+        String filePath = RepoPath.of(fileName);
+        CommitGraph graph = CommitGraph.load();
+        int pos = graph.position(getCurCommit().getID());
+        // Parent read for one commit is the next commit of the walk
+        Commit next = null;
+        while (pos != CommitGraph.NONE) {
+            int parent = graph.firstParent(pos);
+            if (!graph.mayChange(pos, filePath)) {
+                Trace.count("log.bloom.skip");
+                next = null;
+                pos = parent;
+                continue;
+            }
+            Commit commit = next != null ? next
+                    : readObject(join(OBJ_DIR, graph.id(pos)), Commit.class);
+            next = parent == CommitGraph.NONE ? null
+                    : readObject(join(OBJ_DIR, graph.id(parent)), Commit.class);
+            String parentID = next == null ? "" : next.getCommitFileBlobID(filePath);
+            if (!commit.getCommitFileBlobID(filePath).equals(parentID)) {
+                commit.printLogInfo();
+            } else {
+                Trace.count("log.bloom.falsePositive");
+            }
+            pos = parent;
+        }
+    }
+
     /** gitlet rm function. */
     public static void rm(String fileName) {
         // Do not use getFileFromCWD, file might not exist with unix rm
         File rmFile = join(CWD, fileName);
-        // rmFile.getPath() might be null, use string concatenation
-        String filePath = CWD + "/" + fileName;
+        String filePath = RepoPath.of(fileName);
         curStage = getCurStage();
         curCommit = getCurCommit();
         if (curStage.isFileInStaging(filePath)) {
@@ -225,23 +371,26 @@ public class Repository {
         } else if (curCommit.isFileInCommit(filePath)) {
             // 2. Remove file if it is in current commit, stage the file for removal
             curStage.rmFileInStaging(filePath);
-            curCommit.untrackFileInCommit(filePath);
             // If removed before with unix rm cmd
             if (rmFile.exists()) {
                 rmFile.delete();
             }
         } else {
             // 3. This file is neither staged nor tracked by this commit
-            System.out.println("No reason to remove the file.");
-            System.exit(0);
+            throw new GitletException("No reason to remove the file.");
         }
     }
 
     /** gitlet status function. */
     public static void status() {
+        status(false);
+    }
+
+    /** gitlet status [--renames] function, RENAMES adds a section pairing
+     *  removed or deleted files with new ones of similar contents. */
+    public static void status(boolean renames) {
         checkGitletExists();
-        // Prefix of filePath
-        String cwd = CWD.getPath();
+        Trace.Region region = Trace.region("status.branches");
         System.out.println("=== Branches ===");
         ArrayList<String> branchList = new ArrayList<>(Utils.plainFilenamesIn(HEADS_DIR));
         curBranchName = getCurBranchName();
@@ -254,12 +403,15 @@ public class Repository {
         }
         System.out.println();
 
+        region.close();
+
         // 2. Staged file in current Staging area
+        region = Trace.region("status.staged");
         curStage = getCurStage();
         Set<String> addSet = curStage.getAddBlobs().keySet();
         System.out.println("=== Staged Files ===");
-        for (String filePath: addSet) {
-            System.out.println(filePath.substring(cwd.length() + 1));
+        for (String fileName: addSet) {
+            System.out.println(fileName);
         }
         System.out.println();
 
@@ -267,45 +419,50 @@ public class Repository {
         curCommit = getCurCommit();
         Set<String> rmSet = curStage.getRmBlobs();
         System.out.println("=== Removed Files ===");
-        for (String filePath: rmSet) {
-            System.out.println(filePath.substring(cwd.length() + 1));
+        for (String fileName: rmSet) {
+            System.out.println(fileName);
         }
         System.out.println();
 
+        region.close();
+
         // 4. Modifications Not Staged For Commit
+        region = Trace.region("status.modified");
         System.out.println("=== Modifications Not Staged For Commit ===");
         // commitAll contains files to be tracked
         Map<String, String> commitAll = curCommit.getSavedBlobs();
         // setAdd contains files to be staged
         Map<String, String> stageAdd = curStage.getAddBlobs();
         Set<String> stageRm = curStage.getRmBlobs();
-        // Read cwd fileName
-        ArrayList<String> cwdFileName = new ArrayList<>(Utils.plainFilenamesIn(CWD));
+        // Read cwd fileName, only files changed since last status are hashed again
+        FsMonitor.Snapshot snap = FsMonitor.snapshot();
+        List<String> cwdFileName = snap.fileNames();
+        // Files outside sparse set are absent on purpose, do not scan them
+        SparseCheckout sparse = SparseCheckout.load();
         Set<String> modified = new TreeSet<>();
         Set<String> deleted = new TreeSet<>();
         // Case 1 and 4
-        for (String filePath : commitAll.keySet()) {
-            String fileName = filePath.substring(cwd.length() + 1);
-            File f = join(CWD, fileName);
-            if (f.exists()) {
-                String curBlobID = Utils.sha1(Utils.readContents(f), filePath);
-                if (!commitAll.get(filePath).equals(curBlobID) && !stageAdd.containsKey(filePath)) {
+        for (String fileName : commitAll.keySet()) {
+            if (!SparseCheckout.includes(sparse, fileName)) {
+                continue;
+            }
+            if (snap.exists(fileName)) {
+                String curBlobID = snap.blobID(fileName);
+                if (!commitAll.get(fileName).equals(curBlobID) && !stageAdd.containsKey(fileName)) {
                     // case 1: Tracked in current Commit, contents changed with prev commit, but not staged
                     modified.add(fileName);
                 }
             }
-            else if (!stageRm.contains(filePath)) {
+            else if (!stageRm.contains(fileName)) {
                 // case 4: Tracked in current Commit, File not in CWD, Not staged for removal
                 deleted.add(fileName);
             }
         }
         // Case 2 and 3
-        for (String filePath : stageAdd.keySet()) {
-            String fileName = filePath.substring(cwd.length() + 1);
-            File f = join(CWD, fileName);
-            if (f.exists()) {
-                String curBlobID = Utils.sha1(Utils.readContents(f), filePath);
-                if (!stageAdd.get(filePath).equals(curBlobID)) {
+        for (String fileName : stageAdd.keySet()) {
+            if (snap.exists(fileName)) {
+                String curBlobID = snap.blobID(fileName);
+                if (!stageAdd.get(fileName).equals(curBlobID)) {
                     // case 2: In current Staging, File in CWD, contents changed
                     modified.add(fileName);
                 }
@@ -324,19 +481,50 @@ public class Repository {
         }
         System.out.println();
 
+        region.close();
+
         // 5. Files without gitlet knowledge, only for files in CWD.
+        region = Trace.region("status.untracked");
         System.out.println("=== Untracked Files ===");
+        List<String> untracked = new ArrayList<>();
         for (String fileName : cwdFileName) {
-            String filePath = CWD + "/" + fileName;
             // Check tracked?
-            boolean isTracked = curCommit.isFileInCommit(filePath);
+            boolean isTracked = curCommit.isFileInCommit(fileName);
             // Check in staging?
-            boolean isStaging = curStage.isFileInStaging(filePath);
+            boolean isStaging = curStage.isFileInStaging(fileName);
             if (!isTracked && !isStaging) {
                 System.out.println(fileName);
+                untracked.add(fileName);
             }
         }
         System.out.println();
+        snap.save();
+        region.close();
+
+        // 6. Tracked files gone from CWD or staged for removal, paired with new files
+        if (!renames) {
+            return;
+        }
+        System.out.println("=== Renames ===");
+        List<String> gone = new ArrayList<>();
+        for (String fileName : commitAll.keySet()) {
+            if (stageRm.contains(fileName)
+                    || (SparseCheckout.includes(sparse, fileName) && !snap.exists(fileName))) {
+                gone.add(fileName);
+            }
+        }
+        List<String> added = new ArrayList<>(untracked);
+        for (String fileName : stageAdd.keySet()) {
+            if (!commitAll.containsKey(fileName) && snap.exists(fileName)) {
+                added.add(fileName);
+            }
+        }
+        List<Renames.Rename> res = Renames.detect(Renames.Side.blobs(gone, commitAll::get),
+                Renames.Side.files(added));
+        for (Renames.Rename r : res) {
+            System.out.println(r.from + " -> " + r.to + " (" + r.score + "%)");
+        }
+        System.out.println();
     }
 
     /** gitlet branch function. */
@@ -344,12 +532,28 @@ public class Repository {
         // Fail case: duplicate-branch-err
         File branchFile = join(HEADS_DIR, branchName);
         if (branchFile.exists()) {
-            System.out.println("A branch with that name already exists.");
-            System.exit(0);
+            throw new GitletException("A branch with that name already exists.");
         }
         // Create a branch == create a new file and save commitID to branchFile
         curCommit = getCurCommit();
-        curCommit.saveCommit(branchName);
+        curCommit.saveCommit(branchName, "branch");
+    }
+
+    /** gitlet branch --contains [commit id] function. */
+    public static void branchContains(String commitID) {
+        checkGitletExists();
+        String realCommitID = resolveCommitID(commitID);
+        if (realCommitID == null) {
+            throw new GitletException("No commit with that id exists.");
+        }
+        ReachabilityIndex reach = ReachabilityIndex.load();
+        curBranchName = getCurBranchName();
+        for (String br : Remote.branchNames(HEADS_DIR)) {
+            String brCommitID = Utils.readObject(join(HEADS_DIR, br), String.class);
+            if (reach.isAncestor(realCommitID, brCommitID)) {
+                System.out.println(br.equals(curBranchName) ? "*" + br : br);
+            }
+        }
     }
 
     /** Helper function to handle fail case in checkout branch. */
@@ -357,25 +561,24 @@ public class Repository {
         // Fail case: branch does not exist
         File branchFile = Utils.join(HEADS_DIR, branchName);
         if (!branchFile.exists()) {
-            System.out.println("No such branch exists.");
-            System.exit(0);
+            throw new GitletException("No such branch exists.");
         }
         // Fail case: checkout current branch
         curBranchName = getCurBranchName();
         if (curBranchName.equals(branchName)) {
-            System.out.println("No need to checkout the current branch.");
-            System.exit(0);
+            throw new GitletException("No need to checkout the current branch.");
         }
         // Fail case: File untracked in current branch and would be overwritten by checkout
         // Real git do not clear staging area, and stage all files that is checkout out
         // Real git won't do checkout that would overwrite or undo changes on staged files
         Set<String> curBrFileList = getCurCommit().getSavedBlobs().keySet();
-        List<String> list = Utils.plainFilenamesIn(CWD);
+        List<String> list = FsMonitor.snapshot().fileNames();
+        SparseCheckout sparse = SparseCheckout.load();
         for (String fileName: list) {
-            String filePath = CWD + "/" + fileName;
-            if (!curBrFileList.contains(filePath)) {
-                System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-                System.exit(0);
+            String filePath = RepoPath.of(fileName);
+            // Checkout never writes outside sparse set
+            if (!curBrFileList.contains(filePath) && SparseCheckout.includes(sparse, fileName)) {
+                throw new GitletException("There is an untracked file in the way; delete it, or add and commit it first.");
             }
         }
     }
@@ -388,27 +591,39 @@ public class Repository {
      *      File3 is null       File3 (Overwrite File3 in cwd)
      * */
     public static void checkoutBranch(String branchName) {
+        Trace.Region region = Trace.region("checkout.check");
         checkoutBranchIsFailed(branchName);
+        region.close();
+        region = Trace.region("checkout.write");
         // current branchFileList
-        Set<String> curBrFileList = getCurCommit().getSavedBlobs().keySet();
+        Commit oldCommit = getCurCommit();
+        Set<String> curBrFileList = oldCommit.getSavedBlobs().keySet();
         // Update branch with new branch(branchName)
         Utils.writeObject(HEAD, branchName);
         // New branchFileList
-        Set<String> newBrFileList = getCurCommit().getSavedBlobs().keySet();
+        Commit newCommit = getCurCommit();
+        if (!newCommit.getID().equals(oldCommit.getID())) {
+            Reflog.append(Reflog.logOf(Reflog.HEAD_REF), oldCommit.getID(), newCommit.getID(), "checkout");
+        }
+        Set<String> newBrFileList = newCommit.getSavedBlobs().keySet();
+        // Only files in sparse set are written
+        SparseCheckout sparse = SparseCheckout.load();
         // Case 1 and 3. Overwrite all files in newBranch
-        for (String path : newBrFileList) {
-            File f = new File(path);
+        for (String fileName : newBrFileList) {
             // Files are tracked in checkout branch. Overwrite.
-            overWriteFileWithCommit(getCurCommit(), f.getName());
+            if (SparseCheckout.includes(sparse, fileName)) {
+                overWriteFileWithCommit(newCommit, fileName);
+            }
         }
         // Case 2, delete Set(old - new) file
         for (String path : curBrFileList) {
-            File f = new File(path);
+            File f = join(CWD, path);
             // Files are not tracked in checkout branch. Delete the file if in cwd.
             if (!newBrFileList.contains(path) && f.exists()) {
                 f.delete();
             }
         }
+        region.close();
         // Clear staging area, unless checkout branch is current branch
         curStage = getCurStage();
         curStage.rmStagingArea();
@@ -416,17 +631,16 @@ public class Repository {
 
     /** Helper function to overwrite file with given commit. */
     private static void overWriteFileWithCommit(Commit commit, String fileName) {
-        String filePath = CWD + "/" + fileName;
+        String filePath = RepoPath.of(fileName);
         if (!commit.isFileInCommit(filePath)) {
-            System.out.println("File does not exist in that commit.");
-            System.exit(0);
+            throw new GitletException("File does not exist in that commit.");
         }
-        File oldFile = new File(filePath);
+        File oldFile = join(CWD, filePath);
+        // File might be in a folder missing from a sparse working tree
+        oldFile.getParentFile().mkdirs();
         String newBlobID = commit.getCommitFileBlobID(filePath);
-        File blobFile = join(OBJ_DIR, newBlobID);
-        Blob blob = Utils.readObject(blobFile, Blob.class);
         // Overwrite oldFile contents with Blob in obj folder
-        Utils.writeContents(oldFile, blob.getContents());
+        Blob.writeToFile(newBlobID, oldFile);
     }
 
     /** gitlet checkout -- [file name] function. */
@@ -436,15 +650,29 @@ public class Repository {
         overWriteFileWithCommit(curCommit, fileName);
     }
 
+    /** Helper function to return full commitID of a full or abbreviated ID
+     *  or of a reflog entry ref@{n} or ref@{date}, null if there is none. */
+    static String resolveCommitID(String commitID) {
+        if (commitID.contains("@{")) {
+            return Reflog.resolve(commitID);
+        }
+        if (commitID.length() == UID_LENGTH) {
+            return join(OBJ_DIR, commitID).exists() ? commitID : null;
+        }
+        if (!COMMIT_ID_INDEX.exists()) {
+            return null;
+        }
+        prefixCommitID = Utils.readObject(COMMIT_ID_INDEX, TrieIndex.class);
+        return prefixCommitID.matchSixDigit(commitID);
+    }
+
     /** gitlet checkout [commit id] -- [file name]. */
     public static void checkoutCommitID(String commitID, String fileName) {
         // commitID might be in abbreviate form
-        prefixCommitID = Utils.readObject(COMMIT_ID_INDEX, TrieIndex.class);
-        String realCommitID = prefixCommitID.matchSixDigit(commitID);
+        String realCommitID = resolveCommitID(commitID);
         // Fail case
         if (realCommitID == null) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
+            throw new GitletException("No commit with that id exists.");
         }
         File commitFile = Utils.join(OBJ_DIR, realCommitID);
         Commit commit = readObject(commitFile, Commit.class);
@@ -452,39 +680,12 @@ public class Repository {
         overWriteFileWithCommit(commit, fileName);
     }
 
-    /** Helper function to get parent CommitID in distance order. */
-    private static List<String> getBfsList(Commit commit) {
-        Queue<String> q = new ArrayDeque<>();
-        List<String> res = new ArrayList<>();
-        Commit cur = commit;
-        res.add(cur.getID());
-        while (!cur.getFirstParentID().equals("")) {
-            String p1 = cur.getFirstParentID();
-            String p2 = cur.getMergeParentID();
-            if (p1 != null && !q.contains(p1)) {
-                q.add(p1);
-            }
-            if (p2 != null && !q.contains(p2)) {
-                q.add(p2);
-            }
-            String head = q.poll();
-            res.add(head);
-            File f = join(OBJ_DIR, head);
-            cur = Utils.readObject(f, Commit.class);
-        }
-        return res;
-    }
-
-    /** Helper function to get split point Commit object. */
-    private static Commit getSplitPointCommit(Commit a, Commit b) {
-        List<String> parentA = getBfsList(a);
-        Set<String> parentB = b.getParents();
-        String resID = null;
-        for (String pid : parentA) {
-            if (parentB.contains(pid)) {
-                resID = pid;
-                break;
-            }
+    /** Helper function to get split point Commit object,
+     *  the closest common ancestor of A and B in the commit graph. */
+    private static Commit getSplitPointCommit(ReachabilityIndex reach, Commit a, Commit b) {
+        String resID = reach.splitPoint(a.getID(), b.getID());
+        if (resID == null) {
+            throw new GitletException("No common ancestor in shallow history.");
         }
         // Read commit with resID
         File commitFile = Utils.join(OBJ_DIR, resID);
@@ -493,35 +694,40 @@ public class Repository {
 
     /** gitlet merge function. */
     public static void merge(String branchName) {
-        // Special merge case 1: Split point is same as given branch
-        // Special merge case 2: Fast forward merge
-        Commit splitPoint = getSplitPointCommit(getCurCommit(), getCommit(branchName));
         curCommit = getCurCommit();
         curStage = getCurStage();
         curBranchName = getCurBranchName();
         Commit brCommit = getCommit(branchName);
-        if (splitPoint.getID().equals(brCommit.getID())) {
-            System.out.println("Given branch is an ancestor of the current branch.");
-            System.exit(0);
+        Trace.Region region = Trace.region("merge.splitPoint");
+        ReachabilityIndex reach = ReachabilityIndex.load();
+        // Special merge case 1: Split point is same as given branch
+        if (reach.isAncestor(brCommit.getID(), curCommit.getID())) {
+            throw new GitletException("Given branch is an ancestor of the current branch.");
         }
-        if (splitPoint.getID().equals(getCurCommit().getID())) {
+        // Special merge case 2: Fast forward merge
+        if (reach.isAncestor(curCommit.getID(), brCommit.getID())) {
             checkoutBranch(branchName);
             System.out.println("Current branch fast-forwarded.");
-            System.exit(0);
+            return;
         }
+        Commit splitPoint = getSplitPointCommit(reach, curCommit, brCommit);
+        // add() below reloads curCommit, HEAD as it was is kept here
+        Commit head = curCommit;
+        region.close();
+        region = Trace.region("merge.files");
         // Update Update tracked file in mergeCommit.
         Map<String, String> updateMerge = new HashMap<>();
         Map<String, String> delMerge = new HashMap<>();
         // Use set to union all fileNames in splitCommit, curCommit and brCommit
         Set<String> all = new HashSet<>();
+        SparseCheckout sparse = SparseCheckout.load();
         all.addAll(splitPoint.getSavedBlobs().keySet());
         all.addAll(curCommit.getSavedBlobs().keySet());
         all.addAll(brCommit.getSavedBlobs().keySet());
+        mergeRenames(splitPoint, brCommit, all, delMerge);
 
         for (String filePath : all) {
-            File f = new File(filePath);
-            String cwd = CWD.getPath();
-            String fileName = filePath.substring(cwd.length() + 1);
+            File f = join(CWD, filePath);
             // If found in history, check if blob match (modified? deleted?) in other commit
             String splitID = splitPoint.getCommitFileBlobID(filePath);
             String curID = curCommit.getCommitFileBlobID(filePath);
@@ -532,14 +738,16 @@ public class Repository {
                 if (brID.equals("")) {
                     delMerge.put(filePath, curID);
                     f.delete();
-                    curCommit.untrackFileInCommit(filePath);
-                    curCommit.saveCommit(curBranchName);
+                } else if (!SparseCheckout.includes(sparse, filePath)) {
+                    // Outside sparse set, take brCommit blob without writing the file
+                    curStage = getCurStage();
+                    curStage.saveBlobID2Staging(filePath, brID);
                 } else {
                     // Checkout the file in brCommit (Not empty) and stage the file
                     // case 1: Present in splitCommit, not modified in curCommit, modified in brCommit
                     // Case 5: Not present in splitCommit, not present in curCommit, present in brCommit
-                    checkoutCommitID(brCommit.getID(), fileName);
-                    add(fileName);
+                    checkoutCommitID(brCommit.getID(), filePath);
+                    add(filePath);
                 }
             } else if (!splitID.equals(brID) && !curID.equals(brID)) {
                 // !splitID.equals(curID) && !splitID.equals(brID) && !curID.equals(brID)
@@ -548,32 +756,592 @@ public class Repository {
                 String brContents = "";
 
                 if (curID != "") {
-                    File blobFile = join(OBJ_DIR, curID);
-                    Blob blob = Utils.readObject(blobFile, Blob.class);
-                    curContents = new String(blob.getContents(), StandardCharsets.UTF_8);
+                    curContents = new String(Blob.readContents(curID), StandardCharsets.UTF_8);
                 }
                 if (brID != "") {
-                    File blobFile = join(OBJ_DIR, brID);
-                    Blob blob = Utils.readObject(blobFile, Blob.class);
-                    brContents = new String(blob.getContents(), StandardCharsets.UTF_8);
+                    brContents = new String(Blob.readContents(brID), StandardCharsets.UTF_8);
                 }
-                String conflictContents = "<<<<<<< HEAD" + "\n" + curContents  + "=======" + "\n"
-                       + brContents + ">>>>>>>" + "\n";
-                Utils.writeContents(f, conflictContents);
+                writeConflict(f, curContents, brContents);
                 Blob blob = new Blob(f);
                 updateMerge.put(filePath, blob.getBlobID());
-                add(fileName);
+                add(filePath);
                 System.out.println("Encountered a merge conflict.");
             }
         }
+        region.close();
+        region = Trace.region("merge.commit");
         String commitMsg = "Merged " + branchName + " into " + getCurBranchName() + ".";
-        // Make merge commit
-        Commit mergeCommit = new Commit(curCommit, brCommit, curStage, commitMsg);
-        // Update tracked file in mergeCommit.
-        mergeCommit.updateMergeCommitFile(updateMerge, delMerge);
+        // Whole merge tree, conflicts and deletions included, before it is hashed
+        curStage = getCurStage();
+        Map<String, String> tree = head.getSavedBlobs();
+        tree.putAll(curStage.getAddBlobs());
+        tree.keySet().removeAll(curStage.getRmBlobs());
+        tree.putAll(updateMerge);
+        tree.keySet().removeAll(delMerge.keySet());
+        Commit mergeCommit = new Commit(head, brCommit, tree, commitMsg);
         // Save current CommitID to branchFile
-        mergeCommit.saveCommit(curBranchName);
+        mergeCommit.saveCommit(curBranchName, "merge");
         curStage.rmStagingArea();
+        region.close();
+    }
+
+    /** Helper function to exit if staging area is not empty. */
+    private static void checkNoUncommittedChanges() {
+        if (!getCurStage().isStagingEmpty()) {
+            throw new GitletException("You have uncommitted changes.");
+        }
+    }
+
+    /** Exit before anything is written if going from files OLDTREE to
+     *  NEWTREE would overwrite an untracked file or a tracked file changed
+     *  since OLDTREE. */
+    static void checkWorkingTree(Map<String, String> oldTree, Map<String, String> newTree) {
+        FsMonitor.Snapshot snap = FsMonitor.snapshot();
+        SparseCheckout sparse = SparseCheckout.load();
+        Set<String> paths = new TreeSet<>(newTree.keySet());
+        paths.addAll(oldTree.keySet());
+        for (String filePath : paths) {
+            String oldID = oldTree.get(filePath);
+            String newID = newTree.get(filePath);
+            if (Objects.equals(oldID, newID) || !snap.exists(filePath)) {
+                continue;
+            }
+            if (oldID == null) {
+                if (SparseCheckout.includes(sparse, filePath)) {
+                    throw new GitletException("There is an untracked file in the way; delete it, or add and commit it first.");
+                }
+            } else if (!oldID.equals(snap.blobID(filePath))) {
+                throw new GitletException("Your local changes would be overwritten; commit or stash them first.");
+            }
+        }
+        snap.save();
+    }
+
+    /** Helper function to update files in CWD from commit files OLDTREE to
+     *  NEWTREE, writing only files whose blobID changed. Exit before writing
+     *  anything if an untracked file would be overwritten. */
+    static void updateWorkingTree(Map<String, String> oldTree, Map<String, String> newTree) {
+        SparseCheckout sparse = SparseCheckout.load();
+        List<String> writes = new ArrayList<>();
+        for (Map.Entry<String, String> e : newTree.entrySet()) {
+            if (e.getValue().equals(oldTree.get(e.getKey()))
+                    || !SparseCheckout.includes(sparse, e.getKey())) {
+                continue;
+            }
+            if (!oldTree.containsKey(e.getKey()) && join(CWD, e.getKey()).exists()) {
+                throw new GitletException("There is an untracked file in the way; delete it, or add and commit it first.");
+            }
+            writes.add(e.getKey());
+        }
+        for (String filePath : writes) {
+            File f = join(CWD, filePath);
+            f.getParentFile().mkdirs();
+            Blob.writeToFile(newTree.get(filePath), f);
+        }
+        for (String filePath : oldTree.keySet()) {
+            if (!newTree.containsKey(filePath)) {
+                join(CWD, filePath).delete();
+            }
+        }
+        Trace.count("worktree.writes", writes.size());
     }
 
+    /** gitlet cherry-pick [commit id] function, applies changes of the commit
+     *  to current branch as a new commit. */
+    public static void cherryPick(String commitID) {
+        checkGitletExists();
+        checkNoUncommittedChanges();
+        curCommit = getCurCommit();
+        curBranchName = getCurBranchName();
+        Commit pick = getCommitOfRev(commitID);
+        Map<String, String> base = pick.getFirstParentID().equals("") ? new TreeMap<>()
+                : readObject(join(OBJ_DIR, pick.getFirstParentID()), Commit.class).getSavedBlobs();
+        Map<String, String> head = curCommit.getSavedBlobs();
+        MergeTree tree = MergeTree.merge(base, head, pick.getSavedBlobs(), true);
+        if (tree.getResult().equals(head)) {
+            throw new GitletException("No changes added to the commit.");
+        }
+        checkWorkingTree(head, tree.getResult());
+        updateWorkingTree(head, tree.getResult());
+        if (!tree.getConflicts().isEmpty()) {
+            // Leave the result staged, commit after resolving
+            getCurStage().stageTree(head, tree.getResult());
+            System.out.println("Encountered a merge conflict.");
+            return;
+        }
+        Commit newCommit = new Commit(curCommit, tree.getResult(), pick.getMessage());
+        newCommit.saveCommit(curBranchName, "cherry-pick");
+        indexCommitIDs(List.of(newCommit.getID()));
+    }
+
+    /** gitlet rebase [branch name] function, replays commits of current branch
+     *  since the split point on top of the given branch. Commits are merged in
+     *  memory and the working tree is written once. Nothing changes if any
+     *  commit conflicts. */
+    public static void rebase(String branchName) {
+        checkGitletExists();
+        File branchFile = join(HEADS_DIR, branchName);
+        if (!branchFile.exists()) {
+            throw new GitletException("A branch with that name does not exist.");
+        }
+        curBranchName = getCurBranchName();
+        if (curBranchName.equals(branchName)) {
+            throw new GitletException("Cannot rebase a branch onto itself.");
+        }
+        checkNoUncommittedChanges();
+        curCommit = getCurCommit();
+        Commit brCommit = getCommit(branchName);
+        ReachabilityIndex reach = ReachabilityIndex.load();
+        CommitGraph graph = reach.graph();
+        if (reach.isAncestor(brCommit.getID(), curCommit.getID())) {
+            System.out.println("Current branch is up to date.");
+            return;
+        }
+        RoaringBitmap onBranch = reach.reach(graph.position(brCommit.getID()));
+        // First-parent chain of current branch down to history of the given branch
+        Trace.Region region = Trace.region("rebase.replay");
+        List<Commit> replay = new ArrayList<>();
+        Commit c = curCommit;
+        while (!onBranch.contains(graph.position(c.getID()))) {
+            replay.add(c);
+            c = readObject(join(OBJ_DIR, c.getFirstParentID()), Commit.class);
+        }
+        Collections.reverse(replay);
+        Map<String, String> base = c.getSavedBlobs();
+        Commit onto = brCommit;
+        Map<String, String> tree = brCommit.getSavedBlobs();
+        // Saved only once every commit replayed cleanly
+        List<Commit> replayed = new ArrayList<>();
+        List<String> newIDs = new ArrayList<>();
+        for (Commit r : replay) {
+            Map<String, String> theirs = r.getSavedBlobs();
+            MergeTree merged = MergeTree.merge(base, tree, theirs, false);
+            base = theirs;
+            if (!merged.getConflicts().isEmpty()) {
+                throw new GitletException("Rebase stopped: " + r.getID().substring(0, 8)
+                        + " conflicts in " + merged.getConflicts().size() + " files, nothing changed.");
+            }
+            // Changes already on the given branch
+            if (merged.getResult().equals(tree)) {
+                continue;
+            }
+            tree = merged.getResult();
+            onto = new Commit(onto, tree, r.getMessage());
+            replayed.add(onto);
+            newIDs.add(onto.getID());
+        }
+        region.close();
+        checkWorkingTree(curCommit.getSavedBlobs(), tree);
+        for (Commit n : replayed) {
+            n.saveObject();
+        }
+        updateWorkingTree(curCommit.getSavedBlobs(), tree);
+        Reflog.update(curBranchName, onto.getID(), "rebase");
+        CommitGraph.register(onto.getID());
+        indexCommitIDs(newIDs);
+        Trace.count("rebase.commits", newIDs.size());
+        if (replay.isEmpty()) {
+            System.out.println("Current branch fast-forwarded.");
+        }
+    }
+
+    /** Helper function to write conflict of CURCONTENTS and BRCONTENTS to F. */
+    private static void writeConflict(File f, String curContents, String brContents) {
+        String conflictContents = "<<<<<<< HEAD" + "\n" + curContents  + "=======" + "\n"
+                + brContents + ">>>>>>>" + "\n";
+        Utils.writeContents(f, conflictContents);
+    }
+
+    /** Helper function to merge files renamed since SPLITPOINT on one side and
+     *  modified on the other side into the new name. Paths handled here are
+     *  removed from ALL, old names to delete are put in DELMERGE. */
+    private static void mergeRenames(Commit splitPoint, Commit brCommit, Set<String> all,
+                                      Map<String, String> delMerge) {
+        Map<String, String> split = splitPoint.getSavedBlobs();
+        Map<String, String> cur = curCommit.getSavedBlobs();
+        Map<String, String> br = brCommit.getSavedBlobs();
+        for (boolean renamedInCur : new boolean[] {true, false}) {
+            Map<String, String> renamed = renamedInCur ? cur : br;
+            Map<String, String> other = renamedInCur ? br : cur;
+            List<String> gone = new ArrayList<>();
+            List<String> added = new ArrayList<>();
+            for (String filePath : split.keySet()) {
+                // Only worth pairing if the other side changed the old name
+                String otherID = other.get(filePath);
+                if (!renamed.containsKey(filePath) && otherID != null
+                        && !otherID.equals(split.get(filePath))) {
+                    gone.add(filePath);
+                }
+            }
+            for (String filePath : renamed.keySet()) {
+                if (!split.containsKey(filePath) && !other.containsKey(filePath)) {
+                    added.add(filePath);
+                }
+            }
+            List<Renames.Rename> res = Renames.detect(
+                    Renames.Side.blobs(gone, split::get), Renames.Side.blobs(added, renamed::get));
+            for (Renames.Rename r : res) {
+                byte[] changed = Blob.readContents(other.get(r.from));
+                File f = join(CWD, r.to);
+                if (r.score == 100) {
+                    // Pure rename, take the changes of the other side
+                    Utils.writeContents(f, (Object) changed);
+                } else {
+                    byte[] moved = Blob.readContents(renamed.get(r.to));
+                    String movedContents = new String(moved, StandardCharsets.UTF_8);
+                    String changedContents = new String(changed, StandardCharsets.UTF_8);
+                    writeConflict(f, renamedInCur ? movedContents : changedContents,
+                            renamedInCur ? changedContents : movedContents);
+                    System.out.println("Encountered a merge conflict.");
+                }
+                add(r.to);
+                if (!renamedInCur) {
+                    delMerge.put(r.from, cur.get(r.from));
+                    join(CWD, r.from).delete();
+                }
+                all.remove(r.from);
+                all.remove(r.to);
+            }
+        }
+    }
+
+    /** gitlet sparse-checkout [set|add|list|disable] [pattern...] function. */
+    public static void sparseCheckout(String action, List<String> patterns) {
+        checkGitletExists();
+        SparseCheckout old = SparseCheckout.load();
+        switch (action) {
+            case "list" -> {
+                if (old != null) {
+                    old.getPatterns().forEach(System.out::println);
+                }
+                return;
+            }
+            case "set" -> SparseCheckout.save(patterns);
+            case "add" -> {
+                List<String> all = old == null ? new ArrayList<>() : old.getPatterns();
+                all.addAll(patterns);
+                SparseCheckout.save(all);
+            }
+            case "disable" -> SPARSE_CHECKOUT.delete();
+            default -> throw new GitletException("Incorrect operands.");
+        }
+        applySparseCheckout(old, SparseCheckout.load());
+    }
+
+    /** Helper function to update working tree from sparse set OLD to NEW. Files
+     *  leaving the set are deleted unless they have unstaged changes. */
+    private static void applySparseCheckout(SparseCheckout old, SparseCheckout sparse) {
+        curCommit = getCurCommit();
+        curStage = getCurStage();
+        for (Map.Entry<String, String> e : curCommit.getSavedBlobs().entrySet()) {
+            String fileName = e.getKey();
+            boolean wasIn = SparseCheckout.includes(old, fileName);
+            boolean isIn = SparseCheckout.includes(sparse, fileName);
+            File f = join(CWD, fileName);
+            if (!wasIn && isIn && !f.exists()) {
+                overWriteFileWithCommit(curCommit, fileName);
+            } else if (wasIn && !isIn && f.isFile()) {
+                boolean clean = Utils.sha1File(f, e.getKey()).equals(e.getValue());
+                if (clean && !curStage.isFileInStaging(e.getKey())) {
+                    f.delete();
+                } else {
+                    System.out.println("Not removing " + fileName + ", it has local changes.");
+                }
+            }
+        }
+    }
+
+    /** gitlet fsmonitor [start|run|stop|status] function. */
+    public static void fsmonitor(String action) {
+        checkGitletExists();
+        switch (action) {
+            case "start" -> FsMonitor.startDaemon();
+            case "run" -> FsMonitor.runDaemon();
+            case "stop" -> FsMonitor.stopDaemon();
+            case "status" -> System.out.println(FsMonitor.isRunning()
+                    ? "fsmonitor is running." : "fsmonitor is not running.");
+            default -> throw new GitletException("Incorrect operands.");
+        }
+    }
+
+    /** gitlet reflog [ref] function, HEAD by default. */
+    public static void reflog(String ref) {
+        checkGitletExists();
+        Reflog.print(ref == null ? Reflog.HEAD_REF : ref);
+    }
+
+    /** gitlet gc [expire] function, records and unreachable objects older
+     *  than EXPIRE (90.days.ago by default) are removed. */
+    public static void gc(String expire) {
+        checkGitletExists();
+        Gc.run(Reflog.parseTime(expire == null ? "90.days.ago" : expire));
+    }
+
+    /** gitlet bisect [start [bad [good...]]|good|bad|skip [rev]|run [cmd...]|reset]
+     *  function. */
+    public static void bisect(String action, List<String> args) {
+        checkGitletExists();
+        switch (action) {
+            case "start" -> Bisect.start(args);
+            case "good", "bad", "skip" -> {
+                if (args.size() > 1) {
+                    throw new GitletException("Incorrect operands.");
+                }
+                Bisect.mark(action, args.isEmpty() ? null : args.get(0));
+            }
+            case "run" -> {
+                if (args.isEmpty()) {
+                    throw new GitletException("Incorrect operands.");
+                }
+                Bisect.run(args);
+            }
+            case "reset" -> Bisect.reset();
+            default -> throw new GitletException("Incorrect operands.");
+        }
+    }
+
+    /** gitlet archive [--format=tar|zip] [-o file] [rev] function, the
+     *  archive goes to stdout unless OUTPUT names a file. FORMAT defaults to
+     *  zip for an OUTPUT ending in .zip, else to tar. */
+    public static void archive(String format, String output, String rev) {
+        checkGitletExists();
+        Commit commit = getCommitOfRev(rev);
+        if (format == null) {
+            format = output != null && output.endsWith(".zip") ? "zip" : "tar";
+        }
+        if (!format.equals("tar") && !format.equals("zip")) {
+            throw new GitletException("Unknown archive format " + format + ".");
+        }
+        try {
+            OutputStream out = output == null ? new FileOutputStream(FileDescriptor.out)
+                    : new FileOutputStream(userFile(output));
+            Archive.write(commit, format, out);
+        } catch (FileNotFoundException excp) {
+            throw new GitletException("Cannot write " + output + ".");
+        }
+    }
+
+    /** gitlet stash [push [message]|pop|list] function. */
+    public static void stash(String action, String message) {
+        checkGitletExists();
+        switch (action) {
+            case "push" -> Stash.push(getCurCommit(), getCurBranchName(), message);
+            case "pop" -> Stash.pop(getCurCommit());
+            case "list" -> Stash.list();
+            default -> throw new GitletException("Incorrect operands.");
+        }
+    }
+
+    /** gitlet blame [file name] function. */
+    public static void blame(String fileName) {
+        checkGitletExists();
+        curCommit = getCurCommit();
+        String filePath = RepoPath.of(fileName);
+        if (!curCommit.isFileInCommit(filePath)) {
+            throw new GitletException("File does not exist in that commit.");
+        }
+        Blame.blame(curCommit, filePath);
+    }
+
+    /** Helper function to return Commit of a branch name or a full or
+     *  abbreviated commitID, exit if there is none. */
+    private static Commit getCommitOfRev(String rev) {
+        File ref = join(HEADS_DIR, rev);
+        String commitID = ref.isFile() ? readObject(ref, String.class) : resolveCommitID(rev);
+        if (commitID == null) {
+            throw new GitletException("No commit with that id exists.");
+        }
+        return readObject(join(OBJ_DIR, commitID), Commit.class);
+    }
+
+    /** gitlet diff [commit id or branch] [commit id or branch] function, prints
+     *  added (A), deleted (D), modified (M) and renamed (R + similarity) files
+     *  from the first commit to the second one, HEAD if not given. */
+    public static void diff(String fromRev, String toRev) {
+        checkGitletExists();
+        Map<String, String> from = getCommitOfRev(fromRev).getSavedBlobs();
+        Map<String, String> to = (toRev == null ? getCurCommit() : getCommitOfRev(toRev)).getSavedBlobs();
+        // fileName -> status line, sorted by fileName
+        Map<String, String> lines = new TreeMap<>();
+        List<String> deleted = new ArrayList<>();
+        List<String> added = new ArrayList<>();
+        for (Map.Entry<String, String> e : from.entrySet()) {
+            String fileName = e.getKey();
+            String toID = to.get(e.getKey());
+            if (toID == null) {
+                deleted.add(fileName);
+            } else if (!toID.equals(e.getValue())) {
+                lines.put(fileName, "M " + fileName);
+            }
+        }
+        for (String filePath : to.keySet()) {
+            if (!from.containsKey(filePath)) {
+                added.add(filePath);
+            }
+        }
+        List<Renames.Rename> renames = Renames.detect(
+                Renames.Side.blobs(deleted, from::get), Renames.Side.blobs(added, to::get));
+        for (Renames.Rename r : renames) {
+            deleted.remove(r.from);
+            added.remove(r.to);
+            lines.put(r.from, String.format("R%03d %s %s", r.score, r.from, r.to));
+        }
+        deleted.forEach(name -> lines.put(name, "D " + name));
+        added.forEach(name -> lines.put(name, "A " + name));
+        lines.values().forEach(System.out::println);
+    }
+
+    /** gitlet grep [pattern] [commit id or branch name...] function, searches
+     *  HEAD if no commit is given and every commit with --all. */
+    public static void grep(String regex, List<String> revs) {
+        checkGitletExists();
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(regex);
+        } catch (PatternSyntaxException excp) {
+            throw new GitletException("Invalid pattern.");
+        }
+        if (revs.equals(List.of("--all"))) {
+            CommitGraph graph = CommitGraph.load();
+            // Newest first, like log, each commit read when grep gets to it
+            Grep.grep(pattern, () -> new Iterator<>() {
+                private int pos = graph.size() - 1;
+
+                @Override
+                public boolean hasNext() {
+                    return pos >= 0;
+                }
+
+                @Override
+                public Commit next() {
+                    return readObject(join(OBJ_DIR, graph.id(pos--)), Commit.class);
+                }
+            });
+            return;
+        }
+        List<Commit> commits = new ArrayList<>();
+        if (revs.isEmpty()) {
+            commits.add(getCurCommit());
+        } else {
+            for (String rev : revs) {
+                commits.add(getCommitOfRev(rev));
+            }
+        }
+        Grep.grep(pattern, commits);
+    }
+
+    /** gitlet add-remote [remote name] [name of remote directory]/.gitlet function. */
+    public static void addRemote(String name, String path) {
+        checkGitletExists();
+        Remote.add(name, path);
+    }
+
+    /** gitlet rm-remote [remote name] function. */
+    public static void rmRemote(String name) {
+        checkGitletExists();
+        Remote.remove(name);
+    }
+
+    /** gitlet fetch [remote name] [remote branch name] function. */
+    public static void fetch(String name, String branch) {
+        checkGitletExists();
+        Remote.fetch(name, branch);
+    }
+
+    /** gitlet push [remote name] [remote branch name] function. */
+    public static void push(String name, String branch) {
+        checkGitletExists();
+        Remote.push(name, branch);
+    }
+
+    /** gitlet pull [remote name] [remote branch name] function,
+     *  fetch and merge the fetched branch into current branch. */
+    public static void pull(String name, String branch) {
+        checkGitletExists();
+        Remote.fetch(name, branch);
+        merge(name + "/" + branch);
+    }
+
+    /** gitlet clone [name of remote directory]/.gitlet [--depth=N] [--blobless] function. */
+    public static void clone(String path, int depth, boolean blobless) {
+        if (GITLET_DIR.exists()) {
+            throw new GitletException("A Gitlet version-control system already " +
+                    "exists in the current directory.");
+        }
+        File srcDir = new File(path);
+        if (!srcDir.isAbsolute()) {
+            srcDir = join(CWD, path);
+        }
+        srcDir = srcDir.toPath().normalize().toFile();
+        if (!join(srcDir, "objects").isDirectory()) {
+            throw new GitletException("Remote directory not found.");
+        }
+        if (!join(srcDir, REPO_FORMAT.getName()).exists()) {
+            throw new GitletException("Please run gitlet migrate in the remote repository first.");
+        }
+        PartialClone.clone(srcDir, depth, blobless);
+        Remote.add("origin", srcDir.getPath());
+        // Write files of HEAD, blobs of a blobless clone are copied here
+        for (Map.Entry<String, String> e : getCurCommit().getSavedBlobs().entrySet()) {
+            File f = join(CWD, e.getKey());
+            f.getParentFile().mkdirs();
+            Blob.writeToFile(e.getValue(), f);
+        }
+    }
+
+    /** gitlet bundle create [file] [branch name] [commit id...] function,
+     *  commits given after the branch are prerequisites left out of the bundle. */
+    public static void bundleCreate(String fileName, String branch, List<String> prerequisites) {
+        checkGitletExists();
+        List<String> ids = new ArrayList<>();
+        for (String commitID : prerequisites) {
+            String realCommitID = resolveCommitID(commitID);
+            if (realCommitID == null) {
+                throw new GitletException("No commit with that id exists.");
+            }
+            ids.add(realCommitID);
+        }
+        Bundle.create(userFile(fileName), branch, ids);
+    }
+
+    /** Helper function to return file at FILENAME, absolute or relative to CWD. */
+    private static File userFile(String fileName) {
+        File file = new File(fileName);
+        return file.isAbsolute() ? file : join(CWD, fileName);
+    }
+
+    /** gitlet bundle unbundle [file] [branch name] function, branch name
+     *  defaults to the one saved in the bundle. */
+    public static void bundleUnbundle(String fileName, String branch) {
+        checkGitletExists();
+        File file = userFile(fileName);
+        if (!file.isFile()) {
+            throw new GitletException("File does not exist.");
+        }
+        Bundle.unbundle(file, branch);
+    }
+
+    /** gitlet upload-pack [commit id] plumbing, run by fetch of another repository. */
+    public static void uploadPack(String want) {
+        checkGitletExists();
+        Remote.uploadPack(want);
+    }
+
+    /** gitlet receive-pack [branch name] [old commit id] plumbing, run by push of another repository. */
+    public static void receivePack(String branch, String old) {
+        checkGitletExists();
+        Remote.receivePack(branch, old);
+    }
+
+    /** gitlet dedup-stats function. */
+    public static void dedupStats() {
+        checkGitletExists();
+        ChunkStats.load().print();
+    }
+
+    /** gitlet fsck function. */
+    public static void fsck() {
+        checkGitletExists();
+        new Fsck().run();
+    }
 }
@@ -0,0 +1,299 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/** RepositoryHandle is the API for programs embedding gitlet. Repository
+ *  works on the one repository in CWD through static state and is meant to
+ *  run once per process, a handle instead belongs to one repository folder
+ *  and many of them live side by side in one JVM.
+ *
+ *  A handle is shared by all threads: reads hold its read lock and run in
+ *  parallel, writes hold its write lock. Errors are thrown as
+ *  GitletException with the message the command line would print. Objects
+ *  are named by hashes of their contents and RepoPath keys, so one object
+ *  cache is shared by every handle.
+ */
+public class RepositoryHandle {
+
+    /** Open handles by canonical working folder, so each has one lock. */
+    private static final Map<String, RepositoryHandle> OPEN = new ConcurrentHashMap<>();
+
+    /** Commits and blob contents of every handle, by objectID. */
+    private static final ObjectCache CACHE = new ObjectCache(64 << 20);
+
+    private final File workTree;
+    private final File objDir;
+    private final File headsDir;
+    private final File head;
+    private final File commitIDIndex;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Reachability index of the saved commit graph and the time the graph
+     *  file was written when it was read. */
+    private ReachabilityIndex reach;
+    private long graphStamp = -1;
+
+    private RepositoryHandle(File workTree) {
+        this.workTree = workTree;
+        File gitletDir = Utils.join(workTree, ".gitlet");
+        this.objDir = Utils.join(gitletDir, "objects");
+        this.headsDir = Utils.join(gitletDir, "refs", "heads");
+        this.head = Utils.join(gitletDir, "head");
+        this.commitIDIndex = Utils.join(objDir, Repository.COMMIT_ID_INDEX.getName());
+    }
+
+    /** Return handle of the repository in folder WORKTREE. */
+    public static RepositoryHandle open(File workTree) {
+        File dir = workTree.getAbsoluteFile().toPath().normalize().toFile();
+        File gitletDir = Utils.join(dir, ".gitlet");
+        if (!gitletDir.isDirectory()) {
+            throw new GitletException("Not in an initialized Gitlet directory.");
+        }
+        if (!Utils.join(gitletDir, Repository.REPO_FORMAT.getName()).exists()) {
+            throw new GitletException("Please run gitlet migrate to update this repository.");
+        }
+        return OPEN.computeIfAbsent(dir.getPath(), k -> new RepositoryHandle(dir));
+    }
+
+    /** Return working folder of this repository. */
+    public File getWorkTree() {
+        return workTree;
+    }
+
+    /** Return name of the checked out branch. */
+    public String currentBranch() {
+        return read(() -> Utils.readObject(head, String.class));
+    }
+
+    /** Return names of all branches, fetched ones as REMOTE/BRANCH. */
+    public List<String> branches() {
+        return read(() -> {
+            List<String> res = new ArrayList<>();
+            collectBranches(headsDir, "", res);
+            Collections.sort(res);
+            return res;
+        });
+    }
+
+    private static void collectBranches(File dir, String prefix, List<String> res) {
+        File[] entries = dir.listFiles();
+        for (File f : entries == null ? new File[0] : entries) {
+            if (f.isDirectory()) {
+                collectBranches(f, prefix + f.getName() + "/", res);
+            } else {
+                res.add(prefix + f.getName());
+            }
+        }
+    }
+
+    /** Return full commitID of REV, a branch name or full or abbreviated
+     *  commitID, or of the checked out commit if REV is null. */
+    public String resolve(String rev) {
+        return read(() -> resolveLocked(rev));
+    }
+
+    private String resolveLocked(String rev) {
+        if (rev == null) {
+            rev = Utils.readObject(head, String.class);
+        }
+        File ref = Utils.join(headsDir, rev);
+        if (ref.isFile()) {
+            return Utils.readObject(ref, String.class);
+        }
+        if (rev.length() == Utils.UID_LENGTH && Utils.join(objDir, rev).isFile()) {
+            return rev;
+        }
+        if (rev.length() >= 6 && commitIDIndex.exists()) {
+            String id = Utils.readObject(commitIDIndex, TrieIndex.class).matchSixDigit(rev);
+            if (id != null) {
+                return id;
+            }
+        }
+        throw new GitletException("No commit with that id exists.");
+    }
+
+    /** Return commit of REV, see resolve. Commits are shared, do not change them. */
+    public Commit commit(String rev) {
+        return read(() -> commitLocked(resolveLocked(rev)));
+    }
+
+    private Commit commitLocked(String commitID) {
+        return (Commit) CACHE.get(commitID, () -> {
+            File f = Utils.join(objDir, commitID);
+            if (!f.isFile()) {
+                throw new GitletException("No commit with that id exists.");
+            }
+            return Utils.readObject(f, Commit.class);
+        });
+    }
+
+    /** Return first-parent history of REV, newest first. */
+    public List<Commit> log(String rev) {
+        return read(() -> {
+            List<Commit> res = new ArrayList<>();
+            String id = resolveLocked(rev);
+            while (!id.equals("") && Utils.join(objDir, id).isFile()) {
+                Commit c = commitLocked(id);
+                res.add(c);
+                id = c.getFirstParentID();
+            }
+            return res;
+        });
+    }
+
+    /** Return RepoPath key -> blobID of files at REV. */
+    public Map<String, String> files(String rev) {
+        return read(() -> commitLocked(resolveLocked(rev)).getSavedBlobs());
+    }
+
+    /** Return contents of file FILENAME at REV. */
+    public byte[] contents(String rev, String fileName) {
+        return read(() -> {
+            String blobID = commitLocked(resolveLocked(rev)).getSavedBlobs()
+                    .get(RepoPath.of(fileName));
+            if (blobID == null) {
+                throw new GitletException("File does not exist in that commit.");
+            }
+            byte[] contents = (byte[]) CACHE.get(blobID, () -> {
+                File f = Utils.join(objDir, blobID);
+                if (!f.isFile()) {
+                    throw new GitletException("Blob " + blobID + " is missing.");
+                }
+                Serializable obj = Utils.readObject(f, Serializable.class);
+                return obj instanceof ChunkedBlob
+                        ? ((ChunkedBlob) obj).getContents(Utils.join(objDir, "chunks"))
+                        : ((Blob) obj).getContents();
+            });
+            return contents.clone();
+        });
+    }
+
+    /** Return true if ANCESTOR is REV or one of its ancestors. */
+    public boolean isAncestor(String ancestor, String rev) {
+        return read(() -> {
+            String a = resolveLocked(ancestor);
+            String d = resolveLocked(rev);
+            ReachabilityIndex index = reachLocked();
+            if (index != null && index.graph().position(d) != CommitGraph.NONE) {
+                return index.isAncestor(a, d);
+            }
+            // No graph written yet, or written before REV, walk the commits
+            Set<String> seen = new HashSet<>();
+            Deque<String> stack = new ArrayDeque<>(List.of(d));
+            while (!stack.isEmpty()) {
+                String id = stack.pop();
+                if (id.equals(a)) {
+                    return true;
+                }
+                if (!seen.add(id) || !Utils.join(objDir, id).isFile()) {
+                    continue;
+                }
+                Commit c = commitLocked(id);
+                if (!c.getFirstParentID().equals("")) {
+                    stack.push(c.getFirstParentID());
+                }
+                if (c.getMergeParentID() != null) {
+                    stack.push(c.getMergeParentID());
+                }
+            }
+            return false;
+        });
+    }
+
+    /** Return reachability index of the saved commit graph, read again
+     *  when the graph file changed, null if there is none. */
+    private synchronized ReachabilityIndex reachLocked() {
+        File graphFile = Utils.join(objDir, Repository.COMMIT_GRAPH.getName());
+        long stamp = graphFile.lastModified();
+        if (stamp != graphStamp) {
+            CommitGraph graph = CommitGraph.read(graphFile);
+            if (graph == null) {
+                return null;
+            }
+            // Build the position map now, before threads share the graph
+            graph.position("");
+            reach = ReachabilityIndex.load(graph,
+                    Utils.join(objDir, Repository.COMMIT_BITMAPS.getName()));
+            graphStamp = stamp;
+        }
+        return reach;
+    }
+
+    /** Create branch NAME at REV. */
+    public void branch(String name, String rev) {
+        lock.writeLock().lock();
+        try {
+            File ref = Utils.join(headsDir, name);
+            if (ref.exists()) {
+                throw new GitletException("A branch with that name already exists.");
+            }
+            String id = resolveLocked(rev);
+            Utils.writeObject(ref, id);
+            Reflog.append(Utils.join(workTree, ".gitlet", "logs", "refs", "heads", name), null, id, "branch");
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Return result of BODY run under the read lock. */
+    private <T> T read(Supplier<T> body) {
+        lock.readLock().lock();
+        try {
+            return body.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Least recently used objects up to a total weight, commits weigh a
+     *  little per file and blobs their length. */
+    static class ObjectCache {
+        private final long maxWeight;
+        private long weight = 0;
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+        private static class Entry {
+            private final Object obj;
+            private final long weight;
+
+            Entry(Object obj) {
+                this.obj = obj;
+                this.weight = obj instanceof byte[] ? ((byte[]) obj).length + 64
+                        : 256 + 64L * ((Commit) obj).getSavedBlobs().size();
+            }
+        }
+
+        ObjectCache(long maxWeight) {
+            this.maxWeight = maxWeight;
+        }
+
+        /** Return object ID, made by LOADER outside the cache lock if missing. */
+        Object get(String id, Supplier<Object> loader) {
+            synchronized (this) {
+                Entry hit = entries.get(id);
+                if (hit != null) {
+                    Trace.count("handle.cache.hit");
+                    return hit.obj;
+                }
+            }
+            // Two threads may load the same object, both results are equal
+            Entry e = new Entry(loader.get());
+            synchronized (this) {
+                Entry old = entries.put(id, e);
+                weight += e.weight - (old == null ? 0 : old.weight);
+                Iterator<Entry> it = entries.values().iterator();
+                while (weight > maxWeight && it.hasNext()) {
+                    weight -= it.next().weight;
+                    it.remove();
+                }
+            }
+            return e.obj;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/** A compressed bitmap of non-negative ints in the style of Roaring bitmaps.
+ *  Values are split by their high 16 bits into containers. A container holds
+ *  its low 16 bits either as a sorted char array (sparse) or as a 65536-bit
+ *  long array (dense), switching once it grows past ARRAY_MAX values.
+ */
+public class RoaringBitmap implements Serializable {
+
+    /** Largest sparse container, same size as a dense one in bytes. */
+    private static final int ARRAY_MAX = 4096;
+
+    /** Number of longs in a dense container. */
+    private static final int BITMAP_WORDS = 1024;
+
+    /** Sorted high 16 bits of each container. */
+    private char[] keys = new char[0];
+
+    /** Either char[] (sorted low bits) or long[] (dense bits) per key. */
+    private Object[] containers = new Object[0];
+
+    /** Number of values in each sparse container. */
+    private int[] sizes = new int[0];
+
+    /** Add value X to this bitmap. */
+    public void add(int x) {
+        char hi = (char) (x >>> 16);
+        char lo = (char) x;
+        int i = Arrays.binarySearch(keys, hi);
+        if (i < 0) {
+            i = -i - 1;
+            insertContainer(i, hi, new char[4]);
+        }
+        Object c = containers[i];
+        if (c instanceof long[]) {
+            ((long[]) c)[lo >>> 6] |= 1L << lo;
+            return;
+        }
+        char[] arr = (char[]) c;
+        int size = sizes[i];
+        int j = Arrays.binarySearch(arr, 0, size, lo);
+        if (j >= 0) {
+            return;
+        }
+        j = -j - 1;
+        if (size == ARRAY_MAX) {
+            long[] bits = toBitmap(arr, size);
+            bits[lo >>> 6] |= 1L << lo;
+            containers[i] = bits;
+            return;
+        }
+        if (size == arr.length) {
+            arr = Arrays.copyOf(arr, Math.min(ARRAY_MAX, size * 2));
+            containers[i] = arr;
+        }
+        System.arraycopy(arr, j, arr, j + 1, size - j);
+        arr[j] = lo;
+        sizes[i] = size + 1;
+    }
+
+    /** Return true if value X is in this bitmap. */
+    public boolean contains(int x) {
+        int i = Arrays.binarySearch(keys, (char) (x >>> 16));
+        if (i < 0) {
+            return false;
+        }
+        char lo = (char) x;
+        Object c = containers[i];
+        if (c instanceof long[]) {
+            return (((long[]) c)[lo >>> 6] & (1L << lo)) != 0;
+        }
+        return Arrays.binarySearch((char[]) c, 0, sizes[i], lo) >= 0;
+    }
+
+    /** Add every value of OTHER to this bitmap. */
+    public void or(RoaringBitmap other) {
+        for (int k = 0; k < other.keys.length; ++k) {
+            char hi = other.keys[k];
+            Object oc = other.containers[k];
+            int i = Arrays.binarySearch(keys, hi);
+            if (i < 0) {
+                // Copy whole container
+                i = -i - 1;
+                Object copy = oc instanceof long[]
+                        ? ((long[]) oc).clone()
+                        : Arrays.copyOf((char[]) oc, Math.max(4, other.sizes[k]));
+                insertContainer(i, hi, copy);
+                sizes[i] = other.sizes[k];
+                continue;
+            }
+            if (oc instanceof long[]) {
+                long[] bits = containers[i] instanceof long[]
+                        ? (long[]) containers[i]
+                        : toBitmap((char[]) containers[i], sizes[i]);
+                long[] obits = (long[]) oc;
+                for (int w = 0; w < BITMAP_WORDS; ++w) {
+                    bits[w] |= obits[w];
+                }
+                containers[i] = bits;
+            } else {
+                char[] oarr = (char[]) oc;
+                for (int j = 0; j < other.sizes[k]; ++j) {
+                    add((hi << 16) | oarr[j]);
+                }
+            }
+        }
+    }
+
+    /** Return number of values in this bitmap. */
+    public int cardinality() {
+        int res = 0;
+        for (int i = 0; i < keys.length; ++i) {
+            if (containers[i] instanceof long[]) {
+                for (long w : (long[]) containers[i]) {
+                    res += Long.bitCount(w);
+                }
+            } else {
+                res += sizes[i];
+            }
+        }
+        return res;
+    }
+
+    /** Return a copy of this bitmap. */
+    public RoaringBitmap copy() {
+        RoaringBitmap res = new RoaringBitmap();
+        res.or(this);
+        return res;
+    }
+
+    /** Insert an empty container for HI at index I. */
+    private void insertContainer(int i, char hi, Object c) {
+        int n = keys.length;
+        char[] newKeys = new char[n + 1];
+        Object[] newContainers = new Object[n + 1];
+        int[] newSizes = new int[n + 1];
+        System.arraycopy(keys, 0, newKeys, 0, i);
+        System.arraycopy(containers, 0, newContainers, 0, i);
+        System.arraycopy(sizes, 0, newSizes, 0, i);
+        System.arraycopy(keys, i, newKeys, i + 1, n - i);
+        System.arraycopy(containers, i, newContainers, i + 1, n - i);
+        System.arraycopy(sizes, i, newSizes, i + 1, n - i);
+        newKeys[i] = hi;
+        newContainers[i] = c;
+        keys = newKeys;
+        containers = newContainers;
+        sizes = newSizes;
+    }
+
+    /** Convert a sparse container to a dense one. */
+    private static long[] toBitmap(char[] arr, int size) {
+        long[] bits = new long[BITMAP_WORDS];
+        for (int j = 0; j < size; ++j) {
+            bits[arr[j] >>> 6] |= 1L << arr[j];
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,72 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static gitlet.Repository.*;
+
+/** SparseCheckout limits the working tree to files matching glob patterns
+ *  saved in SPARSE_CHECKOUT. Patterns are relative to CWD and use '/', so
+ *  d/* names what is directly in d. A pattern that names a directory also
+ *  matches everything below it. Files outside the
+ *  patterns stay tracked in commits but are not written by checkout, not
+ *  scanned by status and merged without touching the working tree.
+ */
+public class SparseCheckout implements Serializable {
+
+    /** Glob patterns in the order they were given. */
+    private final List<String> patterns;
+
+    /** Matchers of the patterns, built on first use. */
+    private transient List<PathMatcher> matchers;
+
+    private SparseCheckout(List<String> patterns) {
+        this.patterns = new ArrayList<>(patterns);
+    }
+
+    /** Return saved sparse patterns, or null if sparse checkout is disabled. */
+    public static SparseCheckout load() {
+        if (!SPARSE_CHECKOUT.exists()) {
+            return null;
+        }
+        return Utils.readObject(SPARSE_CHECKOUT, SparseCheckout.class);
+    }
+
+    /** Save PATTERNS as the sparse set. */
+    public static SparseCheckout save(List<String> patterns) {
+        SparseCheckout sparse = new SparseCheckout(patterns);
+        Utils.writeObject(SPARSE_CHECKOUT, sparse);
+        return sparse;
+    }
+
+    /** Return true if FILENAME (relative to CWD) is in the sparse set of
+     *  SPARSE, every file is when SPARSE is null. */
+    public static boolean includes(SparseCheckout sparse, String fileName) {
+        return sparse == null || sparse.matches(fileName);
+    }
+
+    /** Return true if FILENAME matches one of the patterns. */
+    public boolean matches(String fileName) {
+        if (matchers == null) {
+            matchers = new ArrayList<>();
+            for (String p : patterns) {
+                matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + p));
+                matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + p + "/**"));
+            }
+        }
+        for (PathMatcher m : matchers) {
+            if (m.matches(Paths.get(fileName))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return patterns of the sparse set. */
+    public List<String> getPatterns() {
+        return new ArrayList<>(patterns);
+    }
+}
@@ -1,90 +1,412 @@
 package gitlet;
 
-import java.io.File;
-import java.io.Serializable;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.function.Function;
 
 import static gitlet.Repository.*;
 
-/** Staging use ADD_STAGE file to persist staging info.
+/** Staging keeps staging info, keyed by RepoPath, in a sorted binary STAGING_INDEX plus an
+ *  append-only STAGING_JOURNAL of changes made since the index was written.
+ *  A mutation appends one record to the journal instead of rewriting the
+ *  whole index, the journal is folded into a new index once it grows larger
+ *  than the index. The index is memory-mapped and looked up by binary search
+ *  on path, so only the entries asked for are decoded.
  *
+ *  Index:   MAGIC, count, count entry offsets, entries sorted by path.
+ *  Entry:   flags, raw blobID, path length, UTF-8 path.
+ *  Journal: entries, a later entry of a path replaces earlier ones.
  */
 public class Staging implements Serializable {
 
-    /** HashMap to store map to Blob object(unordered), <Blob pathName, SHA1-hash of Blob>.
-     *  add files to addBlobs in Staging area. */
-    private Map<String, String> addBlobs = new TreeMap<>();
+    /** Staging index files written before the journal were a serialized
+     *  Staging with the same two fields, kept readable so they can be
+     *  converted on load. */
+    private static final long serialVersionUID = -2733509552303435110L;
 
-    /** Remove file in this Staging area. */
-    private Set<String> rmBlobs = new TreeSet<>();
+    /** Changes since STAGING_INDEX was last written. */
+    static final File STAGING_JOURNAL = Utils.join(REFS_DIR, "staging-journal");
+
+    /** First int of a binary STAGING_INDEX. */
+    private static final int MAGIC = 0x47535831;
+
+    /** Java serialization stream magic, first short of a legacy index. */
+    private static final short LEGACY_MAGIC = (short) 0xaced;
+
+    /** Entry flags, a path staged with no flag set is unstaged. */
+    private static final int ADD = 1;
+    private static final int RM = 2;
+
+    /** Raw length of a blobID. */
+    private static final int RAW_LENGTH = Utils.UID_LENGTH / 2;
+
+    /** Journal is compacted once larger than this and the index. */
+    private static final long MIN_COMPACT = 1 << 20;
+
+    /** Legacy fields, only set when read from a pre-journal STAGING_INDEX. */
+    private Map<String, String> addBlobs;
+    private Set<String> rmBlobs;
+
+    /** Mapped STAGING_INDEX, null when the index is empty. */
+    private transient ByteBuffer index;
+
+    /** Number of entries in index. */
+    private transient int count;
+
+    /** Path -> latest state from STAGING_JOURNAL, overrides index. */
+    private transient TreeMap<String, State> journal = new TreeMap<>();
+
+    /** Bytes in STAGING_JOURNAL. */
+    private transient long journalSize;
+
+    /** State of one path: blobID staged for addition and removal flag. */
+    private static class State {
+        private final String blobID;
+        private final boolean rm;
+
+        State(String blobID, boolean rm) {
+            this.blobID = blobID;
+            this.rm = rm;
+        }
+
+        boolean isEmpty() {
+            return blobID == null && !rm;
+        }
+    }
+
+    /** Return staging area saved in STAGING_INDEX and STAGING_JOURNAL. */
+    public static Staging load() {
+        Staging stage = new Staging();
+        try (FileChannel ch = FileChannel.open(STAGING_INDEX.toPath())) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.limit() >= 2 && buf.getShort(0) == LEGACY_MAGIC) {
+                return fromLegacy();
+            }
+            if (buf.getInt(0) != MAGIC) {
+                throw new IllegalArgumentException("bad staging index");
+            }
+            stage.count = buf.getInt(4);
+            stage.index = stage.count == 0 ? null : buf;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        stage.readJournal();
+        return stage;
+    }
+
+    /** Convert a serialized pre-journal STAGING_INDEX. Older releases did
+     *  not pin serialVersionUID, so any Staging class descriptor is read as
+     *  the current one. */
+    private static Staging fromLegacy() {
+        Staging legacy;
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(STAGING_INDEX)) {
+            @Override
+            protected ObjectStreamClass readClassDescriptor()
+                    throws IOException, ClassNotFoundException {
+                ObjectStreamClass desc = super.readClassDescriptor();
+                return desc.getName().equals(Staging.class.getName())
+                        ? ObjectStreamClass.lookup(Staging.class) : desc;
+            }
+        }) {
+            legacy = (Staging) in.readObject();
+        } catch (IOException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Staging stage = new Staging();
+        for (Map.Entry<String, String> e : legacy.addBlobs.entrySet()) {
+            stage.journal.put(e.getKey(), new State(e.getValue(), legacy.rmBlobs.contains(e.getKey())));
+        }
+        for (String filePath : legacy.rmBlobs) {
+            stage.journal.putIfAbsent(filePath, new State(null, true));
+        }
+        stage.saveStaging();
+        return stage;
+    }
+
+    /** Replay STAGING_JOURNAL, a torn last record is ignored. */
+    private void readJournal() {
+        if (!STAGING_JOURNAL.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(STAGING_JOURNAL)))) {
+            while (true) {
+                String[] path = new String[1];
+                State s = readEntry(in, path);
+                journal.put(path[0], s);
+                journalSize += entrySize(path[0]);
+            }
+        } catch (EOFException excp) {
+            // End of journal
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    private static State readEntry(DataInputStream in, String[] path) throws IOException {
+        int flags = in.readUnsignedByte();
+        byte[] raw = new byte[RAW_LENGTH];
+        in.readFully(raw);
+        byte[] name = new byte[in.readUnsignedShort()];
+        in.readFully(name);
+        path[0] = RepoPath.intern(new String(name, StandardCharsets.UTF_8));
+        return new State((flags & ADD) != 0 ? Utils.toHex(raw) : null, (flags & RM) != 0);
+    }
+
+    private static void writeEntry(DataOutputStream out, String path, State s) throws IOException {
+        out.writeByte((s.blobID != null ? ADD : 0) | (s.rm ? RM : 0));
+        out.write(s.blobID != null ? Utils.fromHex(s.blobID) : new byte[RAW_LENGTH]);
+        byte[] name = path.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(name.length);
+        out.write(name);
+    }
+
+    private static int entrySize(String path) {
+        return 1 + RAW_LENGTH + 2 + path.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /** Return path of index entry I. */
+    private String indexPath(int i) {
+        int off = index.getInt(8 + 4 * i);
+        int len = index.getShort(off + 1 + RAW_LENGTH) & 0xffff;
+        byte[] name = new byte[len];
+        index.get(off + 1 + RAW_LENGTH + 2, name);
+        return RepoPath.intern(new String(name, StandardCharsets.UTF_8));
+    }
+
+    /** Return state of index entry I. */
+    private State indexState(int i) {
+        int off = index.getInt(8 + 4 * i);
+        int flags = index.get(off);
+        String blobID = null;
+        if ((flags & ADD) != 0) {
+            byte[] raw = new byte[RAW_LENGTH];
+            index.get(off + 1, raw);
+            blobID = Utils.toHex(raw);
+        }
+        return new State(blobID, (flags & RM) != 0);
+    }
+
+    /** Return position of FILEPATH in index, or -1. */
+    private int indexFind(String filePath) {
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = indexPath(mid).compareTo(filePath);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Return current state of FILEPATH, never null. */
+    private State state(String filePath) {
+        State s = journal.get(filePath);
+        if (s != null) {
+            return s;
+        }
+        int i = index == null ? -1 : indexFind(filePath);
+        return i < 0 ? new State(null, false) : indexState(i);
+    }
+
+    /** Return every staged path and its state, sorted by path. */
+    private TreeMap<String, State> entries() {
+        TreeMap<String, State> res = new TreeMap<>();
+        for (int i = 0; i < count; ++i) {
+            res.put(indexPath(i), indexState(i));
+        }
+        for (Map.Entry<String, State> e : journal.entrySet()) {
+            if (e.getValue().isEmpty()) {
+                res.remove(e.getKey());
+            } else {
+                res.put(e.getKey(), e.getValue());
+            }
+        }
+        return res;
+    }
+
+    /** Set state of FILEPATH to S and append it to STAGING_JOURNAL. */
+    private void update(String filePath, State s) {
+        State old = state(filePath);
+        if (Objects.equals(old.blobID, s.blobID) && old.rm == s.rm) {
+            return;
+        }
+        journal.put(filePath, s);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(STAGING_JOURNAL, true)))) {
+            writeEntry(out, filePath, s);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.count("staging.journal.append");
+        journalSize += entrySize(filePath);
+        long indexSize = index == null ? 0 : index.limit();
+        if (journalSize > Math.max(MIN_COMPACT, indexSize)) {
+            saveStaging();
+        }
+    }
 
     /** Check if addBlobs list is empty. */
     public boolean isStagingEmpty() {
-        return addBlobs.isEmpty() && rmBlobs.isEmpty();
+        int n = count;
+        for (Map.Entry<String, State> e : journal.entrySet()) {
+            boolean inIndex = index != null && indexFind(e.getKey()) >= 0;
+            n += (e.getValue().isEmpty() ? 0 : 1) - (inIndex ? 1 : 0);
+        }
+        return n == 0;
     }
 
     /** Check if given file is in addBlobs list. */
     public boolean isFileInStaging(String filePath) {
-        return addBlobs.containsKey(filePath);
+        return state(filePath).blobID != null;
     }
 
     /** Remove file in addBlob map.  */
     public void rmFileInStaging(String filePath) {
-        if (addBlobs.containsKey(filePath)) {
-            addBlobs.remove(filePath);
+        State s = state(filePath);
+        if (s.blobID != null) {
+            update(filePath, new State(null, s.rm));
         } else {
             // File not in staging area
-            rmBlobs.add(filePath);
+            update(filePath, new State(null, true));
         }
-        this.saveStaging();
     }
 
     /** Save blob with info and write it to STAGING_INDEX for persistence. */
     public void saveBlob2Staging(Blob blob) {
-        // SHA1-Hash of filePath as staging file entry name(String),
-        // easy to overwrite if file is already staged.
-        addBlobs.put(blob.getFilePath(), blob.getBlobID());
         // Write blobFile to obj folder, save contents for checkout
         File blobFile = Utils.join(OBJ_DIR, blob.getBlobID());
         Utils.writeObject(blobFile, blob);
+        update(blob.getFilePath(), new State(blob.getBlobID(), state(blob.getFilePath()).rm));
+    }
+
+    /** Save chunked blob, its chunks are already in CHUNK_DIR. */
+    public void saveChunkedBlob2Staging(ChunkedBlob blob) {
+        File blobFile = Utils.join(OBJ_DIR, blob.getBlobID());
+        Utils.writeObject(blobFile, blob);
+        update(blob.getFilePath(), new State(blob.getBlobID(), state(blob.getFilePath()).rm));
+    }
+
+    /** Stage blob already saved in obj folder for FILEPATH. */
+    public void saveBlobID2Staging(String filePath, String blobID) {
+        update(filePath, new State(blobID, false));
+    }
+
+    /** Stage every difference from commit files HEADBLOBS to files TREE. */
+    public void stageTree(Map<String, String> headBlobs, Map<String, String> tree) {
+        for (Map.Entry<String, String> e : tree.entrySet()) {
+            if (!e.getValue().equals(headBlobs.get(e.getKey()))) {
+                journal.put(e.getKey(), new State(e.getValue(), state(e.getKey()).rm));
+            }
+        }
+        for (String filePath : headBlobs.keySet()) {
+            if (!tree.containsKey(filePath)) {
+                journal.put(filePath, new State(state(filePath).blobID, true));
+            }
+        }
+        // A whole tree at once is cheaper to write as a new index
         this.saveStaging();
     }
 
     /** Return BlobID of this file in current commit. */
     public String getStagingFileBlobID(String filePath) {
-        if (this.isFileInStaging(filePath)) {
-            return this.addBlobs.get(filePath);
-        }
-        // File not found in this Staging
-        return null;
+        // Null if file not found in this Staging
+        return state(filePath).blobID;
     }
 
-    /** Save current Staging config to STAGING_INDEX. */
+    /** Fold STAGING_JOURNAL into a new STAGING_INDEX. */
     public void saveStaging() {
-        Utils.writeObject(STAGING_INDEX, this);
+        TreeMap<String, State> all = entries();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(all.size());
+            int off = 8 + 4 * all.size();
+            for (String path : all.keySet()) {
+                out.writeInt(off);
+                off += entrySize(path);
+            }
+            for (Map.Entry<String, State> e : all.entrySet()) {
+                writeEntry(out, e.getKey(), e.getValue());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        // Readers see either the old or the new index, never half of one
+        File tmp = Utils.join(REFS_DIR, "staging-index.tmp");
+        Utils.writeContents(tmp, bytes.toByteArray());
+        try {
+            Files.move(tmp.toPath(), STAGING_INDEX.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        STAGING_JOURNAL.delete();
+        Trace.count("staging.compact");
+        index = all.isEmpty() ? null : ByteBuffer.wrap(bytes.toByteArray());
+        count = all.size();
+        journal.clear();
+        journalSize = 0;
     }
 
     /** Remove Staging area and write it to STAGING_INDEX for persistence. */
     public void rmStagingArea() {
-        addBlobs.clear();
-        rmBlobs.clear();
-        // Save cleared addBlob list to STAGING_INDEX
+        index = null;
+        count = 0;
+        journal.clear();
         this.saveStaging();
     }
 
     /** Not staged for removal, unstage file in rmBlobs. */
     public void notStaging4Removal(String filePath) {
-        this.rmBlobs.remove(filePath);
-        this.saveStaging();
+        update(filePath, new State(state(filePath).blobID, false));
+    }
+
+    /** Rename every staged path by PATHS and blobID by NEWIDS, for Migration. */
+    void rekey(Function<String, String> paths, Map<String, String> newIDs) {
+        TreeMap<String, State> all = entries();
+        index = null;
+        count = 0;
+        journal.clear();
+        for (Map.Entry<String, State> e : all.entrySet()) {
+            String blobID = e.getValue().blobID;
+            journal.put(paths.apply(e.getKey()), new State(
+                    blobID == null ? null : newIDs.getOrDefault(blobID, blobID), e.getValue().rm));
+        }
+        saveStaging();
     }
 
     /** Return a new copied rmBlobs. */
     public Set<String> getRmBlobs() {
-        return new TreeSet<>(rmBlobs);
+        Set<String> res = new TreeSet<>();
+        for (Map.Entry<String, State> e : entries().entrySet()) {
+            if (e.getValue().rm) {
+                res.add(e.getKey());
+            }
+        }
+        return res;
     }
 
     /** Return a new copied addBlobs. */
     public Map<String, String> getAddBlobs() {
-        return new TreeMap<>(addBlobs);
+        Map<String, String> res = new TreeMap<>();
+        for (Map.Entry<String, State> e : entries().entrySet()) {
+            if (e.getValue().blobID != null) {
+                res.put(e.getKey(), e.getValue().blobID);
+            }
+        }
+        return res;
     }
 }
@@ -0,0 +1,150 @@
+package gitlet;
+
+import java.io.File;
+import java.util.*;
+
+import static gitlet.Repository.*;
+
+/** Stash saves the staging area and changes of tracked files as two commits
+ *  on top of the head commit: the index commit holds the staged files, the
+ *  work commit on top of it holds the working tree. Files whose blobID did
+ *  not change are kept by ID from the commit below, so only changed files
+ *  are hashed again and stored. STASH lists work commitIDs, newest first.
+ */
+public class Stash {
+
+    /** Save staged and unstaged changes over HEAD of BRANCH with MESSAGE,
+     *  null for a message naming the head commit, then reset to HEAD. */
+    public static void push(Commit head, String branch, String message) {
+        Staging stage = Staging.load();
+        Map<String, String> headTree = head.getSavedBlobs();
+        Map<String, String> index = headTree;
+        if (!stage.isStagingEmpty()) {
+            index = new Commit(head, null, stage, "").getSavedBlobs();
+        }
+        Map<String, String> work = workTree(index);
+        if (work.equals(headTree) && stage.isStagingEmpty()) {
+            System.out.println("No local changes to save");
+            return;
+        }
+        String what = head.getID().substring(0, 7) + " " + head.getMessage();
+        Commit indexCommit = new Commit(head, index, "index on " + branch + ": " + what);
+        Commit workCommit = new Commit(indexCommit, work,
+                message == null ? "WIP on " + branch + ": " + what : "On " + branch + ": " + message);
+        for (Commit c : List.of(indexCommit, workCommit)) {
+            c.saveObject();
+            CommitGraph.register(c);
+        }
+        indexCommitIDs(List.of(indexCommit.getID(), workCommit.getID()));
+        List<String> stack = read();
+        stack.add(0, workCommit.getID());
+        write(stack);
+        // Only files that differ from head are written back
+        updateWorkingTree(work, headTree);
+        stage.rmStagingArea();
+    }
+
+    /** Return files of the working tree, tracked in INDEX. */
+    private static Map<String, String> workTree(Map<String, String> index) {
+        FsMonitor.Snapshot snap = FsMonitor.snapshot();
+        SparseCheckout sparse = SparseCheckout.load();
+        Map<String, String> res = new TreeMap<>(index);
+        int stored = 0;
+        for (Map.Entry<String, String> e : index.entrySet()) {
+            String filePath = e.getKey();
+            // Files outside the sparse set are absent on purpose
+            if (!SparseCheckout.includes(sparse, filePath)) {
+                continue;
+            }
+            if (!snap.exists(filePath)) {
+                res.remove(filePath);
+                continue;
+            }
+            String id = snap.blobID(filePath);
+            if (id.equals(e.getValue())) {
+                continue;
+            }
+            if (!Utils.join(OBJ_DIR, id).exists()) {
+                store(Utils.join(CWD, filePath));
+                stored += 1;
+            }
+            res.put(filePath, id);
+        }
+        snap.save();
+        Trace.count("stash.stored", stored);
+        return res;
+    }
+
+    /** Save FILE as a blob, chunked if large. */
+    private static void store(File file) {
+        if (file.length() >= ChunkedBlob.CHUNK_THRESHOLD) {
+            ChunkedBlob blob = ChunkedBlob.store(file);
+            Utils.writeObject(Utils.join(OBJ_DIR, blob.getBlobID()), blob);
+        } else {
+            Blob blob = new Blob(file);
+            Utils.writeObject(Utils.join(OBJ_DIR, blob.getBlobID()), blob);
+        }
+    }
+
+    /** Apply the newest stash to HEAD and drop it. A stash made on another
+     *  commit is merged in, on conflict it is kept. */
+    public static void pop(Commit head) {
+        List<String> stack = read();
+        if (stack.isEmpty()) {
+            throw new GitletException("No stash entries found.");
+        }
+        if (!Staging.load().isStagingEmpty()) {
+            throw new GitletException("You have uncommitted changes.");
+        }
+        Commit work = Utils.readObject(Utils.join(OBJ_DIR, stack.get(0)), Commit.class);
+        Commit index = Utils.readObject(Utils.join(OBJ_DIR, work.getFirstParentID()), Commit.class);
+        Map<String, String> base = Utils.readObject(Utils.join(OBJ_DIR, index.getFirstParentID()),
+                Commit.class).getSavedBlobs();
+        Map<String, String> headTree = head.getSavedBlobs();
+        MergeTree tree = MergeTree.merge(base, headTree, work.getSavedBlobs(), true);
+        checkWorkingTree(headTree, tree.getResult());
+        updateWorkingTree(headTree, tree.getResult());
+        if (!tree.getConflicts().isEmpty()) {
+            System.out.println("Encountered a merge conflict.");
+            System.out.println("The stash entry is kept in case you need it again.");
+            return;
+        }
+        // Staged changes come back staged, unless they conflict with head
+        MergeTree staged = MergeTree.merge(base, headTree, index.getSavedBlobs(), false);
+        if (staged.getConflicts().isEmpty() && !staged.getResult().equals(headTree)) {
+            Staging.load().stageTree(headTree, staged.getResult());
+        }
+        stack.remove(0);
+        write(stack);
+    }
+
+    /** Print every stash entry, newest first. */
+    public static void list() {
+        List<String> stack = read();
+        for (int i = 0; i < stack.size(); ++i) {
+            Commit c = Utils.readObject(Utils.join(OBJ_DIR, stack.get(i)), Commit.class);
+            System.out.println("stash@{" + i + "}: " + c.getMessage());
+        }
+    }
+
+    /** Return work commitIDs in STASH, newest first. */
+    static List<String> read() {
+        List<String> res = new ArrayList<>();
+        if (STASH.exists()) {
+            for (String id : Utils.readContentsAsString(STASH).split("\n")) {
+                if (!id.isEmpty()) {
+                    res.add(id);
+                }
+            }
+        }
+        return res;
+    }
+
+    private static void write(List<String> stack) {
+        if (stack.isEmpty()) {
+            STASH.delete();
+            return;
+        }
+        Utils.writeContents(STASH, String.join("\n", stack) + "\n");
+    }
+}
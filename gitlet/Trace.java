@@ -0,0 +1,147 @@
+package gitlet;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Trace collects counters and phase timings of one command and writes
+ *  them as JSON events, one per line, in the spirit of GIT_TRACE2_EVENT.
+ *  Enabled by a leading --trace (stderr) or --trace=FILE option, or by the
+ *  GITLET_TRACE2 environment variable (1/true for stderr, else a file path
+ *  to append to). When disabled every call is a single branch on ENABLED.
+ */
+public class Trace {
+
+    /** True if events are collected for this run. */
+    static boolean enabled = false;
+
+    /** Where events go. */
+    private static PrintStream out;
+
+    /** Name -> value of every counter touched in this run. */
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+
+    /** Start time of this run. */
+    private static long startNanos;
+
+    /** Shared region returned when tracing is off. */
+    private static final Region NO_REGION = new Region(null);
+
+    /** A timed phase, closing it emits a region event. */
+    public static class Region implements AutoCloseable {
+        private final String name;
+        private final long start;
+
+        private Region(String name) {
+            this.name = name;
+            this.start = name == null ? 0 : System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            if (name == null) {
+                return;
+            }
+            long elapsed = (System.nanoTime() - start) / 1000;
+            emit("{\"event\":\"region\",\"name\":" + quote(name)
+                    + ",\"elapsed_us\":" + elapsed + "}");
+        }
+    }
+
+    /** Strip trace options from ARGS, turn tracing on if asked for either
+     *  there or in GITLET_TRACE2, and return remaining ARGS. */
+    public static String[] init(String[] args) {
+        String target = System.getenv("GITLET_TRACE2");
+        int skip = 0;
+        while (skip < args.length && args[skip].startsWith("--trace")) {
+            target = args[skip].startsWith("--trace=") ? args[skip].substring(8) : "1";
+            skip += 1;
+        }
+        if (target != null && !target.isEmpty() && !target.equals("0")
+                && !target.equalsIgnoreCase("false")) {
+            start(target, Arrays.copyOfRange(args, skip, args.length));
+        }
+        return Arrays.copyOfRange(args, skip, args.length);
+    }
+
+    /** Turn tracing on, writing to stderr or appending to file TARGET. */
+    private static void start(String target, String[] argv) {
+        if (target.equals("1") || target.equalsIgnoreCase("true")) {
+            out = System.err;
+        } else {
+            try {
+                out = new PrintStream(new FileOutputStream(target, true), true);
+            } catch (IOException excp) {
+                System.err.println("Cannot open trace file " + target);
+                return;
+            }
+        }
+        enabled = true;
+        startNanos = System.nanoTime();
+        StringBuilder sb = new StringBuilder("{\"event\":\"start\",\"argv\":[");
+        for (int i = 0; i < argv.length; ++i) {
+            sb.append(i == 0 ? "" : ",").append(quote(argv[i]));
+        }
+        sb.append("],\"time_ms\":").append(System.currentTimeMillis()).append('}');
+        emit(sb.toString());
+        // Commands leave through System.exit, so report from a hook
+        Runtime.getRuntime().addShutdownHook(new Thread(Trace::finish));
+    }
+
+    /** Return a region named NAME, close it to record its time. */
+    public static Region region(String name) {
+        if (!enabled) {
+            return NO_REGION;
+        }
+        return new Region(name);
+    }
+
+    /** Add one to counter NAME. */
+    public static void count(String name) {
+        if (enabled) {
+            COUNTERS.computeIfAbsent(name, k -> new LongAdder()).increment();
+        }
+    }
+
+    /** Add N to counter NAME. */
+    public static void count(String name, long n) {
+        if (enabled) {
+            COUNTERS.computeIfAbsent(name, k -> new LongAdder()).add(n);
+        }
+    }
+
+    /** Emit counters and total time. */
+    private static void finish() {
+        StringBuilder sb = new StringBuilder("{\"event\":\"counters\"");
+        for (Map.Entry<String, LongAdder> e : new TreeMap<>(COUNTERS).entrySet()) {
+            sb.append(',').append(quote(e.getKey())).append(':').append(e.getValue().sum());
+        }
+        sb.append('}');
+        emit(sb.toString());
+        long elapsed = (System.nanoTime() - startNanos) / 1000;
+        emit("{\"event\":\"exit\",\"elapsed_us\":" + elapsed + "}");
+        out.flush();
+    }
+
+    private static synchronized void emit(String event) {
+        out.println(event);
+    }
+
+    /** Return S as a JSON string literal. */
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
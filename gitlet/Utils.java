@@ -1,6 +1,7 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -9,13 +10,15 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -33,36 +36,157 @@ class Utils {
 
     /* SHA-1 HASH VALUES. */
 
-    /** Returns the SHA-1 hash of the concatenation of VALS, which may
-     *  be any mixture of byte arrays and Strings. */
-    static String sha1(Object... vals) {
+    /** Files at least this large are hashed through a mapped buffer. */
+    private static final long MAP_THRESHOLD = 1 << 20;
+
+    /** Size of the per-thread buffer used to stream smaller files. */
+    private static final int HASH_BUFFER_SIZE = 64 << 10;
+
+    /** Lower case hex digit of every byte value, high digit then low digit. */
+    private static final char[] HEX_TABLE = new char[512];
+
+    static {
+        char[] digits = "0123456789abcdef".toCharArray();
+        for (int i = 0; i < 256; ++i) {
+            HEX_TABLE[2 * i] = digits[i >>> 4];
+            HEX_TABLE[2 * i + 1] = digits[i & 0xf];
+        }
+    }
+
+    /** One reusable digest per thread, MessageDigest.getInstance is slow. */
+    private static final ThreadLocal<MessageDigest> SHA1_DIGEST =
+            ThreadLocal.withInitial(Utils::newSha1Digest);
+
+    /** Per thread scratch buffers for encoding strings and reading files. */
+    private static final ThreadLocal<byte[]> STRING_BUFFER =
+            ThreadLocal.withInitial(() -> new byte[256]);
+    private static final ThreadLocal<ByteBuffer> FILE_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(HASH_BUFFER_SIZE));
+
+    /** Returns a reset SHA-1 digest owned by the calling thread. It is
+     *  reset again by the next sha1 call on this thread. */
+    static MessageDigest sha1Digest() {
+        MessageDigest md = SHA1_DIGEST.get();
+        md.reset();
+        return md;
+    }
+
+    /** Returns a new SHA-1 digest, for hashes that span other sha1 calls. */
+    static MessageDigest newSha1Digest() {
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
-            }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
+            return MessageDigest.getInstance("SHA-1");
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
     }
 
+    /** Returns the SHA-1 hash of the concatenation of VALS, which may
+     *  be any mixture of byte arrays and Strings. */
+    static String sha1(Object... vals) {
+        return toHex(sha1Raw(vals));
+    }
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns the 20 byte SHA-1 hash of the concatenation of VALS, which
+     *  may be any mixture of byte arrays and Strings. */
+    static byte[] sha1Raw(Object... vals) {
+        MessageDigest md = sha1Digest();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+                Trace.count("hash.bytes", ((byte[]) val).length);
+            } else if (val instanceof String) {
+                Trace.count("hash.bytes", updateString(md, (String) val));
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
+            }
+        }
+        return md.digest();
+    }
+
+    /** Returns the SHA-1 hash of the contents of FILE followed by the
+     *  strings in SUFFIX, without reading FILE into a byte array.
+     *  Equal to sha1(readContents(FILE), SUFFIX...). */
+    static String sha1File(File file, String... suffix) {
+        MessageDigest md = sha1Digest();
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            Trace.count("hash.files");
+            Trace.count("hash.bytes", size);
+            if (size >= MAP_THRESHOLD) {
+                // Large file, let the OS page it in without copying
+                long pos = 0;
+                while (pos < size) {
+                    long len = Math.min(size - pos, Integer.MAX_VALUE);
+                    md.update(ch.map(FileChannel.MapMode.READ_ONLY, pos, len));
+                    pos += len;
+                }
+            } else {
+                ByteBuffer buf = FILE_BUFFER.get();
+                buf.clear();
+                while (ch.read(buf) > 0 || buf.position() > 0) {
+                    buf.flip();
+                    md.update(buf);
+                    buf.clear();
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        for (String s : suffix) {
+            Trace.count("hash.bytes", updateString(md, s));
+        }
+        return toHex(md.digest());
+    }
+
+    /** Feed UTF-8 bytes of S to MD, ASCII strings skip String.getBytes.
+     *  Return the number of bytes fed. */
+    private static int updateString(MessageDigest md, String s) {
+        int len = s.length();
+        byte[] buf = STRING_BUFFER.get();
+        if (buf.length < len) {
+            buf = new byte[Math.max(len, buf.length * 2)];
+            STRING_BUFFER.set(buf);
+        }
+        for (int i = 0; i < len; ++i) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+                md.update(utf8);
+                return utf8.length;
+            }
+            buf[i] = (byte) c;
+        }
+        md.update(buf, 0, len);
+        return len;
+    }
+
+    /** Returns lower case hex numeral of BYTES. */
+    static String toHex(byte[] bytes) {
+        char[] res = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; ++i) {
+            int b = bytes[i] & 0xff;
+            res[2 * i] = HEX_TABLE[2 * b];
+            res[2 * i + 1] = HEX_TABLE[2 * b + 1];
+        }
+        return new String(res);
+    }
+
+    /** Returns bytes of hex numeral HEX, which has an even length. */
+    static byte[] fromHex(String hex) {
+        byte[] res = new byte[hex.length() / 2];
+        for (int i = 0; i < res.length; ++i) {
+            res[i] = (byte) ((Character.digit(hex.charAt(2 * i), 16) << 4)
+                    | Character.digit(hex.charAt(2 * i + 1), 16));
+        }
+        return res;
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -98,7 +222,10 @@ class Utils {
             throw new IllegalArgumentException("must be a normal file");
         }
         try {
-            return Files.readAllBytes(file.toPath());
+            byte[] res = Files.readAllBytes(file.toPath());
+            Trace.count("file.read");
+            Trace.count("file.read.bytes", res.length);
+            return res;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -131,6 +258,7 @@ class Utils {
                 }
             }
             str.close();
+            Trace.count("file.write");
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -145,6 +273,8 @@ class Utils {
                     new ObjectInputStream(new FileInputStream(file));
             T result = expectedClass.cast(in.readObject());
             in.close();
+            Trace.count("object.read");
+            Trace.count("object.read.bytes", file.length());
             return result;
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
@@ -154,7 +284,10 @@ class Utils {
 
     /** Write OBJ to FILE. */
     static void writeObject(File file, Serializable obj) {
-        writeContents(file, serialize(obj));
+        byte[] bytes = serialize(obj);
+        Trace.count("object.write");
+        Trace.count("object.write.bytes", bytes.length);
+        writeContents(file, bytes);
     }
 
     /* DIRECTORIES */
@@ -220,6 +353,15 @@ class Utils {
         }
     }
 
+    /** Returns the object serialized in BYTES. */
+    static Serializable deserialize(byte[] bytes) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (Serializable) in.readObject();
+        } catch (IOException | ClassCastException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
 
 
     /* MESSAGES AND ERROR REPORTING */
@@ -1,11 +1,12 @@
-import sys, re
+import sys, re, json
 from subprocess import \
      check_output, PIPE, STDOUT, DEVNULL, CalledProcessError, TimeoutExpired
-from os.path import abspath, basename, dirname, exists, join, splitext
+from os.path import abspath, basename, dirname, exists, getsize, join, splitext
 from getopt import getopt, GetoptError
-from os import chdir, environ, getcwd, mkdir, remove, access, W_OK
+from os import chdir, environ, getcwd, mkdir, remove, access, walk, W_OK, pathsep
 from shutil import copyfile, rmtree
 from math import log
+from time import perf_counter
 
 SHORT_USAGE = """\
 Usage: python3 tester.py OPTIONS TEST.in ...
@@ -24,6 +25,14 @@ Usage: python3 tester.py OPTIONS TEST.in ...
        --tolerance=N  Set the maximum allowed edit distance between program
                       output and expected output to N (default 3).
        --verbose      Print extra information about execution.
+       --perf         Record wall time, object count and repository size of
+                      each command and fail on regressions from a baseline.
+       --baseline=FILE
+                      Baseline for --perf (default perf/baseline.json).
+       --update-baseline
+                      With --perf, write measured values to the baseline
+                      instead of comparing with it.
+       --scale=F      Multiply the sizes given to S commands by F (default 1).
 """
 
 USAGE = SHORT_USAGE + """\
@@ -76,6 +85,17 @@ The instructions each have one of the following forms:
           Defines the variable VAR to have the literal value VALUE.  VALUE is
           taken to be a raw Python string (as in r"VALUE").  Substitutions are
           first applied to VALUE.
+   S SCENARIO N ...
+          Build a synthetic repository in the current directory with
+          gitlet.SyntheticRepo from benchmark/classes (run make in benchmark
+          first), e.g. "S history 20 5000".  Sizes N are multiplied by the
+          --scale factor.  Output is ignored.
+   J OPERATION OPERANDS
+   LINE1
+   ...
+   <<<
+          Like >, but runs gitlet.HandleCheck from benchmark/classes, which
+          calls the RepositoryHandle API on the current directory.
 
 For each TEST.in, reports at most one error.  Without the --show option,
 simply indicates tests passed and failed.  If N is postive, also prints details
@@ -84,12 +104,22 @@ tests.  With --keep, keeps the directories created for the tests (with names
 TEST.dir).
 
 When finished, reports number of tests passed and failed, and the number of
-faulty TEST.in files."""
+faulty TEST.in files.
+
+With --perf, each > and S command also records its wall time, the number
+of objects in .gitlet and the bytes under .gitlet afterwards, keyed by test
+name, line number and command.  A command regresses if its time is above
+time_ratio * baseline + time_slack_ms, or its object count or size above
+objects_ratio or bytes_ratio times the baseline, thresholds being read from
+the baseline file.  A regression fails its test like wrong output does.
+Commands missing from the baseline are reported and not checked."""
 
 TIMEOUT = 10
 
 JAVA_COMMAND = "java -ea"
 GITLET_CLASS = "gitlet.Main"
+SYNTHETIC_CLASS = "gitlet.SyntheticRepo"
+HANDLE_CLASS = "gitlet.HandleCheck"
 JVM_OPTIONS = "-agentlib:jdwp=transport=dt_socket,server=y,suspend=y,address=5005"
 
 DEBUG = False
@@ -156,12 +186,12 @@ def doCopy(dest, src, dir):
     except OSError:
         raise ValueError("file {} could not be copied to {}".format(src, dest))
 
-def doExecute(cmnd, dir, timeout, line_num):
+def doExecute(cmnd, dir, timeout, line_num, main_class=GITLET_CLASS):
     here = getcwd()
     out = ""
     try:
         chdir(dir)
-        full_cmnd = "{} {} {}".format(JAVA_COMMAND, GITLET_CLASS, cmnd)
+        full_cmnd = "{} {} {}".format(JAVA_COMMAND, main_class, cmnd)
         skip_first_line = False
 
         if DEBUG:
@@ -173,7 +203,7 @@ def doExecute(cmnd, dir, timeout, line_num):
                 next_cmd = input(input_prompt)
 
             if next_cmd == "s":
-                full_cmnd = "{} {} {} {}".format(JAVA_COMMAND, JVM_OPTIONS, GITLET_CLASS, cmnd)
+                full_cmnd = "{} {} {} {}".format(JAVA_COMMAND, JVM_OPTIONS, main_class, cmnd)
                 timeout, skip_first_line = None, True
 
         out = doCommand(full_cmnd, timeout, skip_first_line)
@@ -194,6 +224,56 @@ def doCommand(full_cmnd, timeout, skip_first_line=False):
 
     return out
 
+def benchClass(name):
+    """Return java arguments running class NAME from benchmark/classes."""
+    bench_dir = join(prog_dir, 'benchmark', 'classes')
+    if not exists(join(bench_dir, *name.split('.')) + '.class'):
+        raise ValueError("{} not found, run make in benchmark".format(bench_dir))
+    return "-cp {}{}{} {}".format(bench_dir, pathsep, prog_dir, name)
+
+def doSynthesize(args, dir, timeout, line_num):
+    sized = [str(max(1, round(int(a) * scale))) if a.isdigit() else a
+             for a in args.split()]
+    return doExecute(' '.join(sized), dir, timeout, line_num,
+                     benchClass(SYNTHETIC_CLASS))
+
+def repoStats(dir):
+    """Return number of objects and total bytes under .gitlet in DIR."""
+    objects = size = 0
+    for root, dirs, files in walk(join(dir, '.gitlet')):
+        for f in files:
+            size += getsize(join(root, f))
+            if re.match(r'[0-9a-f]{40}$', f):
+                objects += 1
+    return objects, size
+
+def perfCheck(key, seconds, dir):
+    """Record measures of the command KEY that ran in DIR, return a
+    description of the regression from the baseline if there is one."""
+    objects, size = repoStats(dir)
+    measured = { "time_ms": round(seconds * 1000),
+                 "objects": objects, "bytes": size }
+    perf_results[key] = measured
+    print("    {:>8} ms {:>7} obj {:>11} B  {}"
+          .format(measured["time_ms"], objects, size, key))
+    base = perf_baseline["commands"].get(key)
+    if update_baseline:
+        return None
+    if base is None:
+        perf_missing.append(key)
+        return None
+    limits = perf_baseline["thresholds"]
+    time_limit = base["time_ms"] * limits["time_ratio"] \
+        + limits["time_slack_ms"]
+    if measured["time_ms"] > time_limit:
+        return "took {} ms, baseline {} ms".format(measured["time_ms"],
+                                                   base["time_ms"])
+    for name in "objects", "bytes":
+        if measured[name] > base[name] * limits[name + "_ratio"]:
+            return "{} {}, baseline {}".format(measured[name], name,
+                                               base[name])
+    return None
+
 def canonicalize(s):
     if s is None:
         return None
@@ -338,8 +418,26 @@ def doTest(test):
                 doCopy(Group(1), Group(2), cdir)
             elif Match(r'-\s*(\S+)', line):
                 doDelete(Group(1), cdir)
-            elif Match(r'>\s*(.*)', line):
-                cmnd = Group(1)
+            elif Match(r'S\s+(.*)', line):
+                args = Group(1)
+                start = perf_counter()
+                msg, out = doSynthesize(args, cdir, timeout, line_num)
+                elapsed = perf_counter() - start
+                if msg == "OK" and perf:
+                    slow = perfCheck("{}:{} S {}".format(base, line_num, args),
+                                     elapsed, cdir)
+                    if slow:
+                        msg = "perf regression: " + slow
+                if msg != "OK":
+                    if out:
+                        print(re.sub(r'(?m)^', '- ', chop_nl(out)))
+                    print("ERROR ({})".format(msg))
+                    reportDetails(test, included_files, line_num)
+                    return False
+            elif Match(r'([>J])\s*(.*)', line):
+                main_class = GITLET_CLASS if Group(1) == '>' \
+                    else benchClass(HANDLE_CLASS)
+                cmnd = Group(2)
                 expected = []
                 while True:
                     line_num, L = next(inp, (line_num, ''))
@@ -351,7 +449,9 @@ def doTest(test):
                         is_regexp = Group(1)
                         break
                     expected.append(do_substs(L))
-                msg, out = doExecute(cmnd, cdir, timeout, line_num)
+                start = perf_counter()
+                msg, out = doExecute(cmnd, cdir, timeout, line_num, main_class)
+                elapsed = perf_counter() - start
                 if verbose:
                     if out:
                         print(re.sub(r'(?m)^', '- ', chop_nl(out)))
@@ -359,6 +459,11 @@ def doTest(test):
                     if not correctProgramOutput(expected, out, last_groups,
                                                 is_regexp):
                         msg = "incorrect output"
+                if msg == "OK" and perf:
+                    slow = perfCheck("{}:{} {}".format(base, line_num, cmnd),
+                                     elapsed, cdir)
+                    if slow:
+                        msg = "perf regression: " + slow
                 if msg != "OK":
                     print("ERROR ({})".format(msg))
                     reportDetails(test, included_files, line_num)
@@ -395,12 +500,17 @@ if __name__ == "__main__":
     verbose = False
     src_dir = 'src'
     output_tolerance = 3
+    perf = False
+    update_baseline = False
+    baseline_file = join('perf', 'baseline.json')
+    scale = 1.0
 
     try:
         opts, files = \
             getopt(sys.argv[1:], '',
                    ['show=', 'keep', 'progdir=', 'verbose', 'src=',
-                    'tolerance=', 'debug'])
+                    'tolerance=', 'debug', 'perf', 'baseline=',
+                    'update-baseline', 'scale='])
         for opt, val in opts:
             if opt == '--show':
                 val = val.lower()
@@ -422,6 +532,14 @@ if __name__ == "__main__":
                 output_tolerance = int(val)
             elif opt == "--debug":
                 DEBUG = True
+            elif opt == "--perf":
+                perf = True
+            elif opt == "--baseline":
+                baseline_file = val
+            elif opt == "--update-baseline":
+                update_baseline = True
+            elif opt == "--scale":
+                scale = float(val)
         if prog_dir is None:
             prog_dir = abspath(getcwd())
             k = 10
@@ -452,6 +570,21 @@ if __name__ == "__main__":
             environ['CLASSPATH'] = "{}".format(prog_dir)
         JAVA_COMMAND = 'exec ' + JAVA_COMMAND
 
+    perf_results = {}
+    perf_missing = []
+    perf_baseline = { "scale": scale,
+                      "thresholds": { "time_ratio": 1.5, "time_slack_ms": 500,
+                                      "objects_ratio": 1.05,
+                                      "bytes_ratio": 1.15 },
+                      "commands": {} }
+    if perf and exists(baseline_file):
+        with open(baseline_file) as inp:
+            perf_baseline = json.load(inp)
+        if perf_baseline["scale"] != scale and not update_baseline:
+            print("Baseline {} is for --scale={}.".format(
+                baseline_file, perf_baseline["scale"]), file=sys.stderr)
+            sys.exit(1)
+
     num_tests = len(files)
     errs = 0
     fails = 0
@@ -468,6 +601,20 @@ if __name__ == "__main__":
             print("FAILED ({})".format(excp.args[0]))
             fails += 1
 
+    if perf and update_baseline:
+        if perf_baseline["scale"] != scale:
+            perf_baseline["commands"] = {}
+        perf_baseline["scale"] = scale
+        perf_baseline["commands"].update(perf_results)
+        with open(baseline_file, 'w') as out:
+            json.dump(perf_baseline, out, indent=2, sort_keys=True)
+            out.write('\n')
+        print("Wrote {} measures to {}.".format(len(perf_results),
+                                                baseline_file))
+    elif perf_missing:
+        print("No baseline for {} commands, run with --update-baseline."
+              .format(len(perf_missing)))
+
     print()
     print("Ran {} tests. ".format(num_tests), end="")
     if errs == fails == 0: